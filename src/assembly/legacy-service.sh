@@ -0,0 +1,14 @@
+#!/bin/sh
+#
+# Start script for the DAPNET Legacy Transmitter Service.
+#
+# The HTTP client connection pool is configured by JVM options, they have to be
+# set before the HTTP client is loaded. Options given in JAVA_OPTS take
+# precedence over the defaults below.
+
+cd "$(dirname "$0")" || exit 1
+
+HTTP_OPTS="-Djdk.httpclient.connectionPoolSize=16 -Djdk.httpclient.keepalive.timeout=1200"
+CONFIG_FILE="${DAPNET_CONFIG_FILE:-legacy-service.properties}"
+
+exec java $HTTP_OPTS $JAVA_OPTS -Ddapnet.config_file="$CONFIG_FILE" -jar legacy-transmitter-service.jar "$@"
@@ -48,6 +48,7 @@ public class Program {
 	private volatile RabbitMQManager mqManager;
 	private volatile TransmitterManager transmitterManager;
 	private volatile TransmitterServer transmitterServer;
+	private volatile TransmitterServices transmitterServices;
 
 	private static ServiceConfiguration loadConfigurationFile() {
 		final String configFile = System.getProperty("dapnet.config_file", "legacy-service.properties");
@@ -72,7 +73,7 @@ public class Program {
 			LOGGER.info("Starting DAPNET Legacy Transmitter Service {} ...", version);
 
 			final ServiceConfiguration config = loadConfigurationFile();
-			final TransmitterServices transmitterServices = new TransmitterServices(config);
+			transmitterServices = new TransmitterServices(config);
 
 			LOGGER.info("Starting message queue manager");
 			messageDispatcher = new ThreadedPagerMessageDispatcher(2);
@@ -118,6 +119,16 @@ public class Program {
 			transmitterServer.shutdown();
 		}
 
+		if (transmitterManager != null) {
+			transmitterManager.shutdown();
+		}
+
+		// Pending service requests are no longer needed once all transmitters are
+		// disconnected
+		if (transmitterServices != null) {
+			transmitterServices.shutdown();
+		}
+
 		LOGGER.info("The service has been stopped.");
 	}
 
@@ -0,0 +1,262 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.ServiceConfiguration;
+
+/**
+ * Bootstrap service that caches the results of another bootstrap service. The
+ * cache is keyed by call sign and a hash of the auth key, an entry is only used
+ * if the transmitter type and version are unchanged. Expired entries are served
+ * for a limited time while they are refreshed in the background
+ * (stale-while-revalidate). Authorization failures are cached for a short time
+ * to protect the backend from misconfigured transmitters.
+ * 
+ * @author Philipp Thiel
+ */
+public class CachingBootstrapService implements TransmitterBootstrapService {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private final TransmitterBootstrapService service;
+	private final Map<String, Entry> cache;
+	private final ConcurrentMap<String, CompletableFuture<ServiceResult<String>>> pending = new ConcurrentHashMap<>();
+	private final long ttlNanos;
+	private final long maxStaleNanos;
+	private final long negativeTtlNanos;
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder staleHitCount = new LongAdder();
+	private final LongAdder negativeHitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+
+	/**
+	 * Constructs a new caching bootstrap service.
+	 * 
+	 * @param service       Bootstrap service to use for cache misses
+	 * @param configuration Service configuration containing the cache settings
+	 * @throws NullPointerException if service or configuration is {@code null}
+	 */
+	public CachingBootstrapService(TransmitterBootstrapService service, ServiceConfiguration configuration) {
+		this.service = Objects.requireNonNull(service, "Bootstrap service must not be null.");
+		Objects.requireNonNull(configuration, "Service configuration must not be null.");
+
+		ttlNanos = TimeUnit.SECONDS.toNanos(configuration.getBootstrapCacheTtl());
+		maxStaleNanos = TimeUnit.SECONDS.toNanos(configuration.getBootstrapCacheMaxStale());
+		negativeTtlNanos = TimeUnit.SECONDS.toNanos(configuration.getBootstrapCacheNegativeTtl());
+
+		final int maxSize = configuration.getBootstrapCacheSize();
+		cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxSize;
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<ServiceResult<String>> postBootstrapRequest(String callSign, String authKey, String type,
+			String version) {
+		final String key = createKey(callSign, authKey);
+		final Entry entry = cache.get(key);
+		final long now = System.nanoTime();
+
+		if (entry != null && entry.matches(type, version)) {
+			final long age = now - entry.loadedAt;
+			if (entry.isNegative()) {
+				if (age < negativeTtlNanos) {
+					negativeHitCount.increment();
+					return CompletableFuture.completedFuture(entry.result);
+				}
+			} else if (age < ttlNanos) {
+				hitCount.increment();
+				return CompletableFuture.completedFuture(entry.result);
+			} else if (age < ttlNanos + maxStaleNanos) {
+				staleHitCount.increment();
+				if (entry.refreshing.compareAndSet(false, true)) {
+					LOGGER.debug("Refreshing bootstrap result for '{}' in the background.", callSign);
+					load(key, callSign, authKey, type, version).whenComplete((r, ex) -> entry.refreshing.set(false));
+				}
+
+				return CompletableFuture.completedFuture(entry.result);
+			}
+		}
+
+		missCount.increment();
+		return load(key, callSign, authKey, type, version);
+	}
+
+	private CompletableFuture<ServiceResult<String>> load(String key, String callSign, String authKey, String type,
+			String version) {
+		// Concurrent requests for the same transmitter share one backend request
+		final CompletableFuture<ServiceResult<String>> promise = new CompletableFuture<>();
+		final CompletableFuture<ServiceResult<String>> existing = pending.putIfAbsent(key, promise);
+		if (existing != null) {
+			return existing;
+		}
+
+		try {
+			service.postBootstrapRequest(callSign, authKey, type, version).whenComplete((result, ex) -> {
+				pending.remove(key, promise);
+
+				if (ex != null) {
+					promise.completeExceptionally(ex);
+					return;
+				}
+
+				if (isCacheable(result)) {
+					cache.put(key, new Entry(type, version, result));
+				}
+
+				promise.complete(result);
+			});
+		} catch (RuntimeException ex) {
+			pending.remove(key, promise);
+			promise.completeExceptionally(ex);
+		}
+
+		return promise;
+	}
+
+	private static boolean isCacheable(ServiceResult<String> result) {
+		if (result == null) {
+			return false;
+		} else if (result.isOk()) {
+			return true;
+		}
+
+		switch (result.getError().getStatusCode()) {
+		case 401:
+		case 403:
+		case 432:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Removes all cached entries.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * Gets the number of requests answered from a fresh cache entry.
+	 * 
+	 * @return Number of cache hits
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * Gets the number of requests answered from an expired cache entry that was
+	 * refreshed in the background.
+	 * 
+	 * @return Number of stale cache hits
+	 */
+	public long getStaleHitCount() {
+		return staleHitCount.sum();
+	}
+
+	/**
+	 * Gets the number of requests rejected from a cached authorization failure.
+	 * 
+	 * @return Number of negative cache hits
+	 */
+	public long getNegativeHitCount() {
+		return negativeHitCount.sum();
+	}
+
+	/**
+	 * Gets the number of requests forwarded to the backend.
+	 * 
+	 * @return Number of cache misses
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	private static String createKey(String callSign, String authKey) {
+		final String name = callSign != null ? callSign.toLowerCase(Locale.ROOT) : "";
+		if (authKey == null) {
+			return name;
+		}
+
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] hash = digest.digest(authKey.getBytes(StandardCharsets.UTF_8));
+
+			StringBuilder sb = new StringBuilder(name.length() + 1 + hash.length * 2);
+			sb.append(name).append(':');
+			for (byte b : hash) {
+				sb.append(HEX_DIGITS[(b >>> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+			}
+
+			return sb.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static final class Entry {
+		private final String type;
+		private final String version;
+		private final ServiceResult<String> result;
+		private final long loadedAt = System.nanoTime();
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+
+		public Entry(String type, String version, ServiceResult<String> result) {
+			this.type = type;
+			this.version = version;
+			this.result = result;
+		}
+
+		public boolean matches(String type, String version) {
+			return Objects.equals(this.type, type) && Objects.equals(this.version, version);
+		}
+
+		public boolean isNegative() {
+			return result.hasError();
+		}
+	}
+
+}
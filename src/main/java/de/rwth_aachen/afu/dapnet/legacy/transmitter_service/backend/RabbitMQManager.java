@@ -290,7 +290,14 @@ public class RabbitMQManager implements TransmitterMessageQueueManager {
 				return null;
 			}
 
-			return new PagerMessage(Priority.CALL, ric.intValue(), subAddr, contentType, sendSpeed, data.getString());
+			// Content is transcoded once here instead of once per transmitter
+			try {
+				return new PagerMessage(Priority.CALL, ric.intValue(), subAddr, contentType, sendSpeed,
+						data.getString());
+			} catch (IllegalArgumentException ex) {
+				LOGGER.error("Invalid numeric content: {}", data.getString());
+				return null;
+			}
 		}
 
 		private ContentType getContentType(String raw) {
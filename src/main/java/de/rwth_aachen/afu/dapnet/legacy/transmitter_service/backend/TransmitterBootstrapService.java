@@ -18,6 +18,8 @@
 
 package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Transmitter bootstrap service interface.
  * 
@@ -27,14 +29,18 @@ package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend;
 public interface TransmitterBootstrapService {
 
 	/**
-	 * Posts a transmitter bootstrap request.
+	 * Posts a transmitter bootstrap request. The request is performed
+	 * asynchronously, the caller must not block on the returned future from an
+	 * event loop thread.
 	 * 
 	 * @param callSign Transmitter call sign
 	 * @param authKey  Transmitter auth key
 	 * @param type     Transmitter type name
 	 * @param version  Transmitter version
-	 * @return Service Bootstrap result (timeslots) or status error in status code
+	 * @return Future completing with the bootstrap result (timeslots) or status
+	 *         error in status code
 	 */
-	ServiceResult<String> postBootstrapRequest(String callSign, String authKey, String type, String version);
+	CompletableFuture<ServiceResult<String>> postBootstrapRequest(String callSign, String authKey, String type,
+			String version);
 
 }
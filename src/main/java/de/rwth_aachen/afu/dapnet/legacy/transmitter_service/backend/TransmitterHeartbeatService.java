@@ -18,6 +18,8 @@
 
 package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface for transmitter heartbeat services.
  * 
@@ -27,13 +29,15 @@ package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend;
 public interface TransmitterHeartbeatService {
 
 	/**
-	 * Posts the heartbeat for a transmitter.
+	 * Posts the heartbeat for a transmitter. The request is performed
+	 * asynchronously.
 	 * 
 	 * @param callSign  Transmitter call sign.
 	 * @param authKey   Transmitter authentication key
 	 * @param ntpSynced NTP synced yes/no
-	 * @return True if the heartbeat post request was successful
+	 * @return Future completing with true if the heartbeat post request was
+	 *         successful
 	 */
-	boolean postHeartbeat(String callSign, String authKey, boolean ntpSynced);
+	CompletableFuture<Boolean> postHeartbeat(String callSign, String authKey, boolean ntpSynced);
 
 }
@@ -19,7 +19,17 @@
 package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend;
 
 import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.json.Json;
 import javax.json.JsonArray;
@@ -27,32 +37,62 @@ import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
 import javax.json.JsonString;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
-import javax.ws.rs.client.Entity;
-import javax.ws.rs.client.WebTarget;
-import javax.ws.rs.core.MediaType;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.glassfish.jersey.client.ClientResponse;
 
 import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.ServiceConfiguration;
 
+/**
+ * Transmitter service client. All requests share a single HTTP client, so
+ * connections to the services are pooled and kept alive between requests. The
+ * pool is configured by the {@code jdk.httpclient.connectionPoolSize} and
+ * {@code jdk.httpclient.keepalive.timeout} JVM options. If enabled and offered
+ * by the server, HTTP/2 is used for https URLs and concurrent requests are
+ * multiplexed over a single connection.
+ * 
+ * @author Philipp Thiel
+ */
 public class TransmitterServices implements TransmitterHeartbeatService, TransmitterBootstrapService {
 
 	private static final Logger LOGGER = LogManager.getLogger();
 	private static final int MAX_TIMESLOTS = 16;
 	private final ServiceConfiguration configuration;
+	private final ExecutorService executor;
+	private final HttpClient httpClient;
+	private final URI bootstrapUri;
+	private final URI heartbeatUri;
+	private final Duration requestTimeout;
 
 	public TransmitterServices(ServiceConfiguration configuration) {
 		this.configuration = Objects.requireNonNull(configuration, "Service configuration must not be null.");
+
+		bootstrapUri = URI.create(configuration.getBootstrapUrl());
+		heartbeatUri = URI.create(configuration.getHeartbeatUrl());
+		requestTimeout = Duration.ofMillis(configuration.getRequestTimeout());
+
+		executor = Executors.newFixedThreadPool(configuration.getServiceThreads());
+		httpClient = HttpClient.newBuilder().executor(executor).version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofMillis(configuration.getConnectTimeout())).build();
+	}
+
+	/**
+	 * Stops the executor used for asynchronous service requests. This will wait
+	 * until pending requests have been finished.
+	 */
+	public void shutdown() {
+		LOGGER.info("Shutting down service executor.");
+		executor.shutdown();
+
+		try {
+			executor.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException ex) {
+			LOGGER.error("Waiting for service executor has been interrupted.");
+		}
 	}
 
 	@Override
-	public boolean postHeartbeat(String callSign, String authKey, boolean ntpSynced) {
-		Client postClient = ClientBuilder.newClient();
-		WebTarget webResource = postClient.target(configuration.getHeartbeatUrl());
+	public CompletableFuture<Boolean> postHeartbeat(String callSign, String authKey, boolean ntpSynced) {
 		JsonObjectBuilder postRequest = Json.createObjectBuilder();
 		postRequest.add("callsign", callSign);
 		postRequest.add("auth_key", authKey);
@@ -60,27 +100,21 @@ public class TransmitterServices implements TransmitterHeartbeatService, Transmi
 
 		JsonObject postJson = postRequest.build();
 
-		String postJsonString = postJson.toString();
-		// System.out.println(postJsonString);
-
-		ClientResponse response = webResource.request(MediaType.APPLICATION_JSON)
-				.post(Entity.entity(postJsonString, MediaType.APPLICATION_JSON), ClientResponse.class);
+		return post(heartbeatUri, postJson).thenApply(response -> {
+			if (response.statusCode() == 200) {
+				return true;
+			} else {
+				LOGGER.error("Heartbeat service returned error status code {} for transmitter '{}'",
+						response.statusCode(), callSign);
 
-		if (response.getStatus() == 200) {
-			return true;
-		} else {
-			LOGGER.error("Heartbeat service returned error status code {} for transmitter '{}'", response.getStatus(),
-					callSign);
-
-			return false;
-		}
+				return false;
+			}
+		});
 	}
 
 	@Override
-	public ServiceResult<String> postBootstrapRequest(String callSign, String authKey, String type, String version) {
-		Client postClient = ClientBuilder.newClient();
-		WebTarget webResource = postClient.target(configuration.getBootstrapUrl());
-
+	public CompletableFuture<ServiceResult<String>> postBootstrapRequest(String callSign, String authKey, String type,
+			String version) {
 		JsonObjectBuilder postRequest = Json.createObjectBuilder();
 		postRequest.add("callsign", callSign);
 		postRequest.add("auth_key", authKey);
@@ -92,22 +126,28 @@ public class TransmitterServices implements TransmitterHeartbeatService, Transmi
 		postRequest.add("software", softwareInfo);
 		JsonObject postJson = postRequest.build();
 
-		String postJsonString = postJson.toString();
-		// System.out.println(POSTRequestString);
-
-		ClientResponse response = webResource.request(MediaType.APPLICATION_JSON)
-				.post(Entity.entity(postJsonString, MediaType.APPLICATION_JSON), ClientResponse.class);
+		return post(bootstrapUri, postJson).thenApply(this::parseBootstrapResponse);
+	}
 
-		String responseJson = response.readEntity(String.class);
+	private CompletableFuture<HttpResponse<String>> post(URI uri, JsonObject body) {
+		// Plain http would only try an h2c upgrade on every request
+		final HttpClient.Version version = configuration.isHttp2Enabled() && "https".equalsIgnoreCase(uri.getScheme())
+				? HttpClient.Version.HTTP_2
+				: HttpClient.Version.HTTP_1_1;
+		HttpRequest request = HttpRequest.newBuilder(uri).version(version).timeout(requestTimeout)
+				.header("Content-Type", "application/json").header("Accept", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(body.toString())).build();
 
-		// System.out.println(response.toString());
+		return httpClient.sendAsync(request, BodyHandlers.ofString());
+	}
 
+	private ServiceResult<String> parseBootstrapResponse(HttpResponse<String> response) {
 		JsonObject responseJsonObject = null;
-		try (JsonReader jsonReader = Json.createReader(new StringReader(responseJson))) {
+		try (JsonReader jsonReader = Json.createReader(new StringReader(response.body()))) {
 			responseJsonObject = jsonReader.readObject();
 		}
 
-		switch (response.getStatus()) {
+		switch (response.statusCode()) {
 		case 200:
 		case 201:
 			// Created
@@ -115,7 +155,7 @@ public class TransmitterServices implements TransmitterHeartbeatService, Transmi
 			return new ServiceResult<>(timeslots);
 		default:
 			JsonString errorMessage = responseJsonObject.getJsonString("error");
-			return new ServiceResult<>(response.getStatus(), errorMessage != null ? errorMessage.getString() : null);
+			return new ServiceResult<>(response.statusCode(), errorMessage != null ? errorMessage.getString() : null);
 		}
 	}
 
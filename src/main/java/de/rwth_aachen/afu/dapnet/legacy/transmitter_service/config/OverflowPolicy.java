@@ -0,0 +1,50 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config;
+
+import java.util.Locale;
+
+/**
+ * Policy applied when a transmitter message queue exceeds its limits. EMERGENCY
+ * and CALL messages are never evicted or rejected.
+ * 
+ * @author Philipp Thiel
+ */
+public enum OverflowPolicy {
+	/**
+	 * Accept the new message and evict the oldest message of the lowest priority.
+	 */
+	DROP_OLDEST,
+	/**
+	 * Reject new low priority messages, evict low priority messages only to make
+	 * room for EMERGENCY and CALL messages.
+	 */
+	REJECT_NEW;
+
+	/**
+	 * Parses an overflow policy (case insensitive).
+	 * 
+	 * @param value Value to parse
+	 * @return Overflow policy
+	 * @throws IllegalArgumentException if the value is not a valid overflow policy
+	 */
+	public static OverflowPolicy parse(String value) {
+		return valueOf(value.trim().toUpperCase(Locale.ROOT));
+	}
+}
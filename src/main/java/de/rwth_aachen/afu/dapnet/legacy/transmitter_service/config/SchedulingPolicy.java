@@ -0,0 +1,52 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config;
+
+import java.util.Locale;
+
+/**
+ * Policy used to pick the next message to send to a transmitter. EMERGENCY
+ * messages are always sent first.
+ * 
+ * @author Philipp Thiel
+ */
+public enum SchedulingPolicy {
+	/**
+	 * Send messages strictly by priority, lower priorities wait until all higher
+	 * priority messages have been sent. This is the default.
+	 */
+	STRICT,
+	/**
+	 * Share the link between priorities by their configured weights using
+	 * deficit round robin.
+	 */
+	WEIGHTED;
+
+	/**
+	 * Parses a scheduling policy (case insensitive).
+	 * 
+	 * @param value Value to parse
+	 * @return Scheduling policy
+	 * @throws IllegalArgumentException if the value is not a valid scheduling
+	 *                                  policy
+	 */
+	public static SchedulingPolicy parse(String value) {
+		return valueOf(value.trim().toUpperCase(Locale.ROOT));
+	}
+}
@@ -18,6 +18,17 @@
 
 package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.Priority;
+
 /**
  * Service configuration parameters.
  * 
@@ -32,9 +43,56 @@ public class ServiceConfiguration extends Configuration {
 
 	private String bootstrapUrl;
 	private String heartbeatUrl;
+	private int serviceThreads = 4;
+	private int heartbeatInterval = 30;
+	private int connectTimeout = 5000;
+	private int requestTimeout = 10000;
+	private boolean http2Enabled = true;
+	private int bootstrapCacheTtl = 300;
+	private int bootstrapCacheMaxStale = 3600;
+	private int bootstrapCacheNegativeTtl = 30;
+	private int bootstrapCacheSize = 1000;
 
 	private int serverPort = 43434;
 	private int numSyncLoops = 5;
+	private boolean adaptiveSync = false;
+	private int minSyncLoops = 2;
+	private int maxSyncLoops = 10;
+	private int syncTolerance = 10;
+	private int resyncInterval = 0;
+	private int readerIdleTimeout = 120;
+	private int writerIdleTimeout = 0;
+	private TransportMode transportMode = TransportMode.AUTO;
+	private int acceptorThreads = 1;
+	private boolean reusePort = false;
+	private boolean tcpNoDelay = true;
+	private int sendBufferSize = 0;
+	private int receiveBufferSize = 0;
+	private int maxConcurrentHandshakes = 64;
+	private int maxQueuedHandshakes = 1024;
+	private double handshakeRatePerAddress = 1.0;
+	private int handshakeBurstPerAddress = 10;
+	private int maxWelcomeLength = 256;
+	private int transmitWindowSize = 8;
+	private Set<String> windowedDevices = Collections.emptySet();
+	private int minAckTimeout = 2000;
+	private int maxAckTimeout = 5000;
+	private int maxQueuedMessages = 1000;
+	private long maxQueuedBytes = 256 * 1024;
+	private int hardMaxQueuedMessages = 10000;
+	private long hardMaxQueuedBytes = 2560 * 1024;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+	private final Map<Priority, Integer> maxMessageAges = new EnumMap<>(Priority.class);
+	private int duplicateWindow = 0;
+	private int duplicateMaxEntries = 1024;
+	private SchedulingPolicy schedulingPolicy = SchedulingPolicy.STRICT;
+	private int agingThreshold = 300;
+	private final Map<Priority, Integer> schedulingWeights = new EnumMap<>(Priority.class);
+	private int sessionGracePeriod = 30;
+	private String journalDirectory = null;
+	private int journalSegmentSize = 4 * 1024 * 1024;
+	private int spillThreshold = 64 * 1024;
+	private Set<Priority> duplicatePriorities = EnumSet.noneOf(Priority.class);
 
 	@Override
 	public void loadConfiguration(PropertyReader reader) {
@@ -47,10 +105,127 @@ public class ServiceConfiguration extends Configuration {
 		// Service URLs
 		bootstrapUrl = reader.getString("services.bootstrap").orElseThrow();
 		heartbeatUrl = reader.getString("services.heartbeat").orElseThrow();
+		serviceThreads = reader.getInteger("services.threads").orElse(4);
+		heartbeatInterval = reader.getInteger("services.heartbeatInterval").orElse(30);
+		connectTimeout = reader.getInteger("services.connectTimeout").orElse(5000);
+		requestTimeout = reader.getInteger("services.requestTimeout").orElse(10000);
+		http2Enabled = reader.getBoolean("services.http2").orElse(true);
+
+		// Bootstrap cache settings
+		bootstrapCacheTtl = reader.getInteger("bootstrap.cache.ttl").orElse(300);
+		bootstrapCacheMaxStale = reader.getInteger("bootstrap.cache.maxStale").orElse(3600);
+		bootstrapCacheNegativeTtl = reader.getInteger("bootstrap.cache.negativeTtl").orElse(30);
+		bootstrapCacheSize = reader.getInteger("bootstrap.cache.size").orElse(1000);
 
 		// Transmitter server settings
 		serverPort = reader.getInteger("serverPort").orElse(43434);
 		numSyncLoops = reader.getInteger("numberOfSyncLoops").orElse(5);
+		adaptiveSync = reader.getBoolean("sync.adaptive").orElse(false);
+		minSyncLoops = reader.getInteger("sync.minLoops").orElse(2);
+		maxSyncLoops = reader.getInteger("sync.maxLoops").orElse(10);
+		syncTolerance = reader.getInteger("sync.tolerance").orElse(10);
+		resyncInterval = reader.getInteger("sync.resyncInterval").orElse(0);
+		readerIdleTimeout = reader.getInteger("idle.readerTimeout").orElse(120);
+		writerIdleTimeout = reader.getInteger("idle.writerTimeout").orElse(0);
+
+		// Transport and socket settings
+		transportMode = reader.getString("server.transport").map(TransportMode::parse).orElse(TransportMode.AUTO);
+		acceptorThreads = reader.getInteger("server.acceptorThreads").orElse(1);
+		reusePort = reader.getBoolean("server.reusePort").orElse(false);
+		tcpNoDelay = reader.getBoolean("server.tcpNoDelay").orElse(true);
+		sendBufferSize = reader.getInteger("server.sendBufferSize").orElse(0);
+		receiveBufferSize = reader.getInteger("server.receiveBufferSize").orElse(0);
+
+		// Handshake admission control
+		maxConcurrentHandshakes = reader.getInteger("handshake.maxConcurrent").orElse(64);
+		maxQueuedHandshakes = reader.getInteger("handshake.maxQueued").orElse(1024);
+		handshakeRatePerAddress = reader.getDouble("handshake.ratePerAddress").orElse(1.0);
+		handshakeBurstPerAddress = reader.getInteger("handshake.burstPerAddress").orElse(10);
+		maxWelcomeLength = reader.getInteger("handshake.maxWelcomeLength").orElse(256);
+
+		// Transmission settings
+		transmitWindowSize = reader.getInteger("transmission.windowSize").orElse(8);
+		windowedDevices = reader.getString("transmission.windowedDevices").map(ServiceConfiguration::parseDeviceList)
+				.orElse(Collections.emptySet());
+		minAckTimeout = reader.getInteger("transmission.minAckTimeout").orElse(2000);
+		maxAckTimeout = reader.getInteger("transmission.maxAckTimeout").orElse(5000);
+
+		// Message queue limits
+		maxQueuedMessages = reader.getInteger("queue.maxMessages").orElse(1000);
+		maxQueuedBytes = reader.getInteger("queue.maxBytes").orElse(256 * 1024);
+		hardMaxQueuedMessages = reader.getInteger("queue.hardMaxMessages").orElse(10000);
+		hardMaxQueuedBytes = reader.getInteger("queue.hardMaxBytes").orElse(2560 * 1024);
+		overflowPolicy = reader.getString("queue.overflowPolicy").map(OverflowPolicy::parse)
+				.orElse(OverflowPolicy.DROP_OLDEST);
+		for (Priority priority : Priority.values()) {
+			String key = "queue.maxAge." + priority.name().toLowerCase(Locale.ROOT);
+			maxMessageAges.put(priority, reader.getInteger(key).orElse(getDefaultMaxMessageAge(priority)));
+		}
+
+		// Duplicate suppression
+		duplicateWindow = reader.getInteger("duplicates.window").orElse(0);
+		duplicateMaxEntries = reader.getInteger("duplicates.maxEntries").orElse(1024);
+		reader.getString("duplicates.priorities").map(ServiceConfiguration::parsePriorityList)
+				.ifPresent(p -> duplicatePriorities = p);
+
+		// Message scheduling
+		schedulingPolicy = reader.getString("queue.scheduler").map(SchedulingPolicy::parse)
+				.orElse(SchedulingPolicy.STRICT);
+		agingThreshold = reader.getInteger("queue.agingThreshold").orElse(300);
+		for (Priority priority : Priority.values()) {
+			String key = "queue.weight." + priority.name().toLowerCase(Locale.ROOT);
+			schedulingWeights.put(priority, reader.getInteger(key).orElse(getDefaultSchedulingWeight(priority)));
+		}
+
+		// Session parking
+		sessionGracePeriod = reader.getInteger("session.gracePeriod").orElse(30);
+
+		// Message journal
+		journalDirectory = reader.getString("journal.directory").filter(s -> !s.isBlank()).orElse(null);
+		journalSegmentSize = reader.getInteger("journal.segmentSize").orElse(4 * 1024 * 1024);
+		spillThreshold = reader.getInteger("journal.spillThreshold").orElse(64 * 1024);
+	}
+
+	private static int getDefaultMaxMessageAge(Priority priority) {
+		switch (priority) {
+		case TIME:
+			return 10;
+		case CALL:
+			return 300;
+		case ACTIVATION:
+			return 600;
+		case NEWS:
+			return 1800;
+		case RUBRIC:
+			return 3600;
+		default:
+			return 0;
+		}
+	}
+
+	private static int getDefaultSchedulingWeight(Priority priority) {
+		switch (priority) {
+		case TIME:
+		case CALL:
+			return 16;
+		case NEWS:
+		case ACTIVATION:
+			return 2;
+		default:
+			return 1;
+		}
+	}
+
+	private static Set<String> parseDeviceList(String value) {
+		return Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+				.map(s -> s.toLowerCase(Locale.ROOT)).collect(Collectors.toUnmodifiableSet());
+	}
+
+	private static Set<Priority> parsePriorityList(String value) {
+		Set<Priority> priorities = EnumSet.noneOf(Priority.class);
+		Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+				.map(s -> Priority.valueOf(s.toUpperCase(Locale.ROOT))).forEach(priorities::add);
+		return priorities;
 	}
 
 	/**
@@ -107,6 +282,89 @@ public class ServiceConfiguration extends Configuration {
 		return heartbeatUrl;
 	}
 
+	/**
+	 * Gets the number of threads used to perform service requests.
+	 * 
+	 * @return Number of service threads
+	 */
+	public int getServiceThreads() {
+		return serviceThreads;
+	}
+
+	/**
+	 * Gets the minimum interval between two heartbeats of the same transmitter.
+	 * 
+	 * @return Heartbeat interval in seconds
+	 */
+	public int getHeartbeatInterval() {
+		return heartbeatInterval;
+	}
+
+	/**
+	 * Gets the connect timeout for service requests.
+	 * 
+	 * @return Connect timeout in milliseconds
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * Gets the timeout for service requests.
+	 * 
+	 * @return Request timeout in milliseconds
+	 */
+	public int getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	/**
+	 * Gets whether HTTP/2 should be used for https service requests if offered by
+	 * the server.
+	 * 
+	 * @return True if HTTP/2 is enabled
+	 */
+	public boolean isHttp2Enabled() {
+		return http2Enabled;
+	}
+
+	/**
+	 * Gets the time a bootstrap result is cached.
+	 * 
+	 * @return Time to live in seconds, 0 disables the cache
+	 */
+	public int getBootstrapCacheTtl() {
+		return bootstrapCacheTtl;
+	}
+
+	/**
+	 * Gets the time an expired bootstrap result is still used while it is
+	 * refreshed in the background.
+	 * 
+	 * @return Maximum staleness in seconds
+	 */
+	public int getBootstrapCacheMaxStale() {
+		return bootstrapCacheMaxStale;
+	}
+
+	/**
+	 * Gets the time a bootstrap authorization failure is cached.
+	 * 
+	 * @return Time to live in seconds
+	 */
+	public int getBootstrapCacheNegativeTtl() {
+		return bootstrapCacheNegativeTtl;
+	}
+
+	/**
+	 * Gets the maximum number of cached bootstrap results.
+	 * 
+	 * @return Maximum number of cache entries
+	 */
+	public int getBootstrapCacheSize() {
+		return bootstrapCacheSize;
+	}
+
 	/**
 	 * Gets the port the transmitter server should listen on.
 	 * 
@@ -125,4 +383,372 @@ public class ServiceConfiguration extends Configuration {
 		return numSyncLoops;
 	}
 
+	/**
+	 * Gets whether the number of sync loops adapts to the link quality.
+	 * 
+	 * @return True if adaptive sync is enabled
+	 */
+	public boolean isAdaptiveSync() {
+		return adaptiveSync;
+	}
+
+	/**
+	 * Gets the minimum number of sync loops in adaptive mode.
+	 * 
+	 * @return Minimum number of sync loops
+	 */
+	public int getMinSyncLoops() {
+		return minSyncLoops;
+	}
+
+	/**
+	 * Gets the maximum number of sync loops in adaptive mode.
+	 * 
+	 * @return Maximum number of sync loops
+	 */
+	public int getMaxSyncLoops() {
+		return maxSyncLoops;
+	}
+
+	/**
+	 * Gets the round trip time variation up to which the sync loops are
+	 * considered stable in adaptive mode.
+	 * 
+	 * @return Tolerance in milliseconds
+	 */
+	public int getSyncTolerance() {
+		return syncTolerance;
+	}
+
+	/**
+	 * Gets the interval of the time resync of connected transmitters.
+	 * 
+	 * @return Resync interval in seconds, 0 disables the resync
+	 */
+	public int getResyncInterval() {
+		return resyncInterval;
+	}
+
+	/**
+	 * Gets the time without data from a connected transmitter after which the
+	 * connection is probed. The connection is closed if the probe is not answered
+	 * within the same time.
+	 * 
+	 * @return Reader idle timeout in seconds, 0 disables the check
+	 */
+	public int getReaderIdleTimeout() {
+		return readerIdleTimeout;
+	}
+
+	/**
+	 * Gets the time without data sent to a connected transmitter after which the
+	 * connection is probed to keep it alive.
+	 * 
+	 * @return Writer idle timeout in seconds, 0 disables the check
+	 */
+	public int getWriterIdleTimeout() {
+		return writerIdleTimeout;
+	}
+
+	/**
+	 * Gets the network transport used by the transmitter server.
+	 * 
+	 * @return Transport mode
+	 */
+	public TransportMode getTransportMode() {
+		return transportMode;
+	}
+
+	/**
+	 * Gets the number of acceptor threads. More than one acceptor requires
+	 * {@code SO_REUSEPORT}.
+	 * 
+	 * @return Number of acceptor threads
+	 */
+	public int getAcceptorThreads() {
+		return acceptorThreads;
+	}
+
+	/**
+	 * Gets whether {@code SO_REUSEPORT} should be used (epoll only).
+	 * 
+	 * @return True if {@code SO_REUSEPORT} is enabled
+	 */
+	public boolean isReusePort() {
+		return reusePort;
+	}
+
+	/**
+	 * Gets whether {@code TCP_NODELAY} should be set on client connections.
+	 * 
+	 * @return True if Nagle's algorithm should be disabled
+	 */
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	/**
+	 * Gets the socket send buffer size.
+	 * 
+	 * @return Send buffer size in bytes or 0 to use the system default
+	 */
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	/**
+	 * Gets the socket receive buffer size.
+	 * 
+	 * @return Receive buffer size in bytes or 0 to use the system default
+	 */
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	/**
+	 * Gets the maximum number of concurrent transmitter handshakes.
+	 * 
+	 * @return Maximum number of concurrent handshakes
+	 */
+	public int getMaxConcurrentHandshakes() {
+		return maxConcurrentHandshakes;
+	}
+
+	/**
+	 * Gets the maximum number of connections waiting for a handshake permit.
+	 * 
+	 * @return Maximum number of queued handshakes
+	 */
+	public int getMaxQueuedHandshakes() {
+		return maxQueuedHandshakes;
+	}
+
+	/**
+	 * Gets the sustained connection rate allowed per source address.
+	 * 
+	 * @return Connections per second, 0 disables the limit
+	 */
+	public double getHandshakeRatePerAddress() {
+		return handshakeRatePerAddress;
+	}
+
+	/**
+	 * Gets the number of connections a source address may open in a burst.
+	 * 
+	 * @return Burst size
+	 */
+	public int getHandshakeBurstPerAddress() {
+		return handshakeBurstPerAddress;
+	}
+
+	/**
+	 * Gets the maximum length of the welcome message sent by a transmitter.
+	 * 
+	 * @return Maximum welcome message length in bytes
+	 */
+	public int getMaxWelcomeLength() {
+		return maxWelcomeLength;
+	}
+
+	/**
+	 * Gets the send window size for a transmitter device. Devices listed in
+	 * {@code transmission.windowedDevices} either by type or by type and version
+	 * ({@code type/version}) use the configured window, all others use
+	 * stop-and-wait.
+	 * 
+	 * @param deviceType    Device type from the welcome message
+	 * @param deviceVersion Device version from the welcome message
+	 * @return Number of messages that may be awaiting an ack
+	 */
+	public int getTransmitWindowSize(String deviceType, String deviceVersion) {
+		if (windowedDevices.isEmpty() || deviceType == null) {
+			return 1;
+		}
+
+		final String type = deviceType.toLowerCase(Locale.ROOT);
+		if (windowedDevices.contains(type)) {
+			return transmitWindowSize;
+		}
+
+		if (deviceVersion != null && windowedDevices.contains(type + "/" + deviceVersion.toLowerCase(Locale.ROOT))) {
+			return transmitWindowSize;
+		}
+
+		return 1;
+	}
+
+	/**
+	 * Gets the lower bound of the adaptive message ack timeout.
+	 * 
+	 * @return Minimum ack timeout in milliseconds
+	 */
+	public int getMinAckTimeout() {
+		return minAckTimeout;
+	}
+
+	/**
+	 * Gets the upper bound of the adaptive message ack timeout.
+	 * 
+	 * @return Maximum ack timeout in milliseconds, 0 disables retransmissions
+	 */
+	public int getMaxAckTimeout() {
+		return maxAckTimeout;
+	}
+
+	/**
+	 * Gets the maximum number of messages queued per transmitter.
+	 * 
+	 * @return Maximum number of messages, 0 means unlimited
+	 */
+	public int getMaxQueuedMessages() {
+		return maxQueuedMessages;
+	}
+
+	/**
+	 * Gets the maximum encoded size of all messages queued per transmitter.
+	 * 
+	 * @return Maximum size in bytes, 0 means unlimited
+	 */
+	public long getMaxQueuedBytes() {
+		return maxQueuedBytes;
+	}
+
+	/**
+	 * Gets the maximum number of messages queued per transmitter including call
+	 * messages, which are not limited by {@link #getMaxQueuedMessages()}.
+	 * 
+	 * @return Maximum number of messages, 0 means unlimited
+	 */
+	public int getHardMaxQueuedMessages() {
+		return hardMaxQueuedMessages;
+	}
+
+	/**
+	 * Gets the maximum encoded size of all messages queued per transmitter
+	 * including call messages, which are not limited by
+	 * {@link #getMaxQueuedBytes()}.
+	 * 
+	 * @return Maximum size in bytes, 0 means unlimited
+	 */
+	public long getHardMaxQueuedBytes() {
+		return hardMaxQueuedBytes;
+	}
+
+	/**
+	 * Gets the policy applied when a transmitter message queue is full.
+	 * 
+	 * @return Overflow policy
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * Gets the time after which queued messages of the given priority expire.
+	 * 
+	 * @param priority Message priority
+	 * @return Maximum message age in seconds, 0 means messages never expire
+	 */
+	public int getMaxMessageAge(Priority priority) {
+		return maxMessageAges.getOrDefault(priority, getDefaultMaxMessageAge(priority));
+	}
+
+	/**
+	 * Gets the time window in which identical messages to the same transmitter
+	 * are suppressed.
+	 * 
+	 * @return Duplicate window in seconds, 0 disables duplicate suppression
+	 */
+	public int getDuplicateWindow() {
+		return duplicateWindow;
+	}
+
+	/**
+	 * Gets the maximum number of message hashes remembered per transmitter and
+	 * window.
+	 * 
+	 * @return Maximum number of entries
+	 */
+	public int getDuplicateMaxEntries() {
+		return duplicateMaxEntries;
+	}
+
+	/**
+	 * Checks if duplicates of messages with the given priority are suppressed.
+	 * 
+	 * @param priority Message priority
+	 * @return True if duplicates are suppressed
+	 */
+	public boolean isDuplicateSuppressed(Priority priority) {
+		return duplicateWindow > 0 && duplicatePriorities.contains(priority);
+	}
+
+	/**
+	 * Gets the policy used to pick the next message to send to a transmitter.
+	 * 
+	 * @return Scheduling policy
+	 */
+	public SchedulingPolicy getSchedulingPolicy() {
+		return schedulingPolicy;
+	}
+
+	/**
+	 * Gets the time after which a waiting message is sent before messages of
+	 * higher priority (except EMERGENCY) by the weighted scheduling policy.
+	 * 
+	 * @return Aging threshold in seconds, 0 disables aging
+	 */
+	public int getAgingThreshold() {
+		return agingThreshold;
+	}
+
+	/**
+	 * Gets the share of the link a priority receives with the weighted
+	 * scheduling policy.
+	 * 
+	 * @param priority Message priority
+	 * @return Relative weight
+	 */
+	public int getSchedulingWeight(Priority priority) {
+		return schedulingWeights.getOrDefault(priority, getDefaultSchedulingWeight(priority));
+	}
+
+	/**
+	 * Gets the time a disconnected session is parked, so a reconnect of the same
+	 * transmitter can take over its queue.
+	 * 
+	 * @return Grace period in seconds, 0 disables parking
+	 */
+	public int getSessionGracePeriod() {
+		return sessionGracePeriod;
+	}
+
+	/**
+	 * Gets the directory of the pending message journals.
+	 * 
+	 * @return Journal directory or {@code null} if journaling is disabled
+	 */
+	public String getJournalDirectory() {
+		return journalDirectory;
+	}
+
+	/**
+	 * Gets the size of a journal segment file.
+	 * 
+	 * @return Segment size in bytes
+	 */
+	public int getJournalSegmentSize() {
+		return journalSegmentSize;
+	}
+
+	/**
+	 * Gets the encoded size of queued messages per transmitter above which low
+	 * priority messages are only kept in the journal.
+	 * 
+	 * @return Spill threshold in bytes, 0 disables spilling
+	 */
+	public int getSpillThreshold() {
+		return spillThreshold;
+	}
+
 }
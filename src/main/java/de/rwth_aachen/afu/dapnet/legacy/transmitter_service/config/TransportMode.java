@@ -0,0 +1,52 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config;
+
+import java.util.Locale;
+
+/**
+ * Network transport used by the transmitter server.
+ * 
+ * @author Philipp Thiel
+ */
+public enum TransportMode {
+	/**
+	 * Use the native epoll transport if available, NIO otherwise.
+	 */
+	AUTO,
+	/**
+	 * Use the native epoll transport (Linux only).
+	 */
+	EPOLL,
+	/**
+	 * Use the Java NIO transport.
+	 */
+	NIO;
+
+	/**
+	 * Parses a transport mode (case insensitive).
+	 * 
+	 * @param value Value to parse
+	 * @return Transport mode
+	 * @throws IllegalArgumentException if the value is not a valid transport mode
+	 */
+	public static TransportMode parse(String value) {
+		return valueOf(value.trim().toUpperCase(Locale.ROOT));
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers 64-bit hashes of recently queued messages to suppress duplicates.
+ * Hashes are stored in two open addressing tables (generations). The current
+ * generation is rotated into the previous one once the window has passed or it
+ * is full, so a hash is remembered for at least one window and at most two.
+ * Memory use is fixed by the maximum number of entries.
+ * 
+ * @author Philipp Thiel
+ */
+final class DuplicateFilter {
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private final long windowNanos;
+	private final int maxEntries;
+	private final int mask;
+	private long[] current;
+	private long[] previous;
+	private int currentSize;
+	private long generationStart;
+
+	/**
+	 * Creates a new duplicate filter. The tables are allocated on first use.
+	 * 
+	 * @param windowSeconds Duplicate window in seconds
+	 * @param maxEntries    Maximum number of hashes per generation
+	 */
+	public DuplicateFilter(int windowSeconds, int maxEntries) {
+		this.windowNanos = TimeUnit.SECONDS.toNanos(windowSeconds);
+		this.maxEntries = Math.max(1, maxEntries);
+		// Keep the load factor at or below 0.5
+		this.mask = Integer.highestOneBit(this.maxEntries * 2 - 1) * 2 - 1;
+	}
+
+	/**
+	 * Checks if the message has been seen within the window and remembers it
+	 * otherwise.
+	 * 
+	 * @param message Message to check
+	 * @return True if the message is a duplicate
+	 */
+	public synchronized boolean isDuplicate(PagerMessage message) {
+		final long now = System.nanoTime();
+		if (current == null) {
+			current = new long[mask + 1];
+			previous = new long[mask + 1];
+			generationStart = now;
+		} else if (now - generationStart >= windowNanos || currentSize >= maxEntries) {
+			rotate(now);
+		}
+
+		final long hash = hash(message);
+		if (contains(previous, hash)) {
+			return true;
+		}
+
+		int i = (int) (hash ^ (hash >>> 32)) & mask;
+		while (current[i] != 0) {
+			if (current[i] == hash) {
+				return true;
+			}
+
+			i = (i + 1) & mask;
+		}
+
+		current[i] = hash;
+		++currentSize;
+		return false;
+	}
+
+	private void rotate(long now) {
+		long[] table = previous;
+		if (now - generationStart >= 2 * windowNanos) {
+			// Both generations are outdated
+			Arrays.fill(current, 0);
+		}
+
+		previous = current;
+		current = table;
+		Arrays.fill(current, 0);
+		currentSize = 0;
+		generationStart = now;
+	}
+
+	private boolean contains(long[] table, long hash) {
+		int i = (int) (hash ^ (hash >>> 32)) & mask;
+		while (table[i] != 0) {
+			if (table[i] == hash) {
+				return true;
+			}
+
+			i = (i + 1) & mask;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Calculates the 64-bit FNV-1a hash of all fields that end up on air.
+	 */
+	private static long hash(PagerMessage message) {
+		long h = FNV_OFFSET_BASIS;
+		h = (h ^ message.getAddress()) * FNV_PRIME;
+		h = (h ^ message.getSubAddress().ordinal()) * FNV_PRIME;
+		h = (h ^ message.getContentType().ordinal()) * FNV_PRIME;
+		h = (h ^ message.getSendSpeed().ordinal()) * FNV_PRIME;
+
+		for (byte b : message.getContentBytes()) {
+			h = (h ^ b) * FNV_PRIME;
+		}
+
+		// Zero marks an empty slot
+		return h != 0 ? h : 1;
+	}
+
+}
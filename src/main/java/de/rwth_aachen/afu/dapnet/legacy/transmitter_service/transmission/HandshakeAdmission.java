@@ -0,0 +1,298 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.net.InetAddress;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.ServiceConfiguration;
+import io.netty.util.concurrent.EventExecutor;
+
+/**
+ * Admission control for transmitter handshakes. New connections are first
+ * checked against a per source address rate limit. Afterwards a connection
+ * needs a permit to start the handshake, the number of permits limits the
+ * number of concurrent handshakes. Connections that do not get a permit
+ * immediately are queued up to a configured limit and rejected otherwise.
+ * 
+ * @author Philipp Thiel
+ */
+final class HandshakeAdmission {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+	private static final int SWEEP_THRESHOLD = 1024;
+	private static final long IDLE_BUCKET_NANOS = TimeUnit.MINUTES.toNanos(5);
+	private final ConcurrentMap<InetAddress, RateBucket> buckets = new ConcurrentHashMap<>();
+	private final Queue<Ticket> waitQueue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger permits;
+	private final AtomicInteger queued = new AtomicInteger();
+	private final int maxQueued;
+	private final double perAddressRate;
+	private final double perAddressBurst;
+	private final LongAdder admittedCount = new LongAdder();
+	private final LongAdder queuedCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+
+	/**
+	 * Creates a new admission control instance.
+	 * 
+	 * @param configuration Service configuration containing the limits
+	 */
+	public HandshakeAdmission(ServiceConfiguration configuration) {
+		permits = new AtomicInteger(Math.max(1, configuration.getMaxConcurrentHandshakes()));
+		maxQueued = Math.max(0, configuration.getMaxQueuedHandshakes());
+		perAddressRate = configuration.getHandshakeRatePerAddress();
+		perAddressBurst = Math.max(1.0, configuration.getHandshakeBurstPerAddress());
+	}
+
+	/**
+	 * Checks the connection rate limit of a source address. Rejections are
+	 * counted.
+	 * 
+	 * @param address Source address
+	 * @return True if the connection is allowed
+	 */
+	public boolean allowConnection(InetAddress address) {
+		if (perAddressRate <= 0.0 || address == null) {
+			return true;
+		}
+
+		final long now = System.nanoTime();
+		if (buckets.size() > SWEEP_THRESHOLD) {
+			buckets.values().removeIf(b -> b.isIdle(now));
+		}
+
+		final RateBucket bucket = buckets.computeIfAbsent(address, a -> new RateBucket(now));
+		if (bucket.tryTake(now)) {
+			return true;
+		}
+
+		LOGGER.debug("Connection rate limit exceeded for {}.", address);
+		recordRejected();
+		return false;
+	}
+
+	/**
+	 * Requests a handshake permit. If a permit is available, the returned ticket
+	 * is admitted. Otherwise the ticket is queued and {@code onAdmitted} is run on
+	 * the given executor once a permit has been granted, or rejected if the queue
+	 * is full. An admitted ticket must be released once the handshake is over.
+	 * A ticket that is admitted while it is being queued is returned admitted, its
+	 * callback may still run afterwards and must then be ignored.
+	 * 
+	 * @param executor   Executor to run the callback on (the channel event loop)
+	 * @param onAdmitted Callback to run if a queued ticket gets admitted
+	 * @return Ticket
+	 */
+	public Ticket requestPermit(EventExecutor executor, Runnable onAdmitted) {
+		final Ticket ticket = new Ticket(executor, onAdmitted);
+
+		if (tryAcquire()) {
+			ticket.state.set(Ticket.ADMITTED);
+			admittedCount.increment();
+			return ticket;
+		}
+
+		if (queued.incrementAndGet() > maxQueued) {
+			queued.decrementAndGet();
+			ticket.state.set(Ticket.REJECTED);
+			recordRejected();
+			return ticket;
+		}
+
+		queuedCount.increment();
+		waitQueue.add(ticket);
+		// A permit may have been released concurrently
+		drainQueue();
+
+		return ticket;
+	}
+
+	/**
+	 * Counts a connection that has been rejected outside of the admission
+	 * control, e.g. because of an invalid welcome message.
+	 */
+	public void recordRejected() {
+		rejectedCount.increment();
+	}
+
+	/**
+	 * Gets the number of handshakes that have been admitted.
+	 * 
+	 * @return Number of admitted handshakes
+	 */
+	public long getAdmittedCount() {
+		return admittedCount.sum();
+	}
+
+	/**
+	 * Gets the number of handshakes that had to wait for a permit.
+	 * 
+	 * @return Number of queued handshakes
+	 */
+	public long getQueuedCount() {
+		return queuedCount.sum();
+	}
+
+	/**
+	 * Gets the number of rejected connections.
+	 * 
+	 * @return Number of rejected connections
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	private boolean tryAcquire() {
+		for (;;) {
+			final int available = permits.get();
+			if (available <= 0) {
+				return false;
+			} else if (permits.compareAndSet(available, available - 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void releasePermit() {
+		permits.incrementAndGet();
+		drainQueue();
+	}
+
+	private void drainQueue() {
+		while (!waitQueue.isEmpty() && tryAcquire()) {
+			final Ticket ticket = waitQueue.poll();
+			if (ticket == null) {
+				permits.incrementAndGet();
+				continue;
+			}
+
+			queued.decrementAndGet();
+			if (ticket.state.compareAndSet(Ticket.PENDING, Ticket.ADMITTED)) {
+				admittedCount.increment();
+				try {
+					ticket.executor.execute(ticket.onAdmitted);
+				} catch (RejectedExecutionException ex) {
+					// Event loop is shutting down
+					ticket.release();
+				}
+			} else {
+				// Canceled while waiting
+				permits.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Handshake permit request.
+	 * 
+	 * @author Philipp Thiel
+	 */
+	final class Ticket {
+		private static final int PENDING = 0;
+		private static final int ADMITTED = 1;
+		private static final int REJECTED = 2;
+		private static final int CANCELED = 3;
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+		private final AtomicBoolean released = new AtomicBoolean();
+		private final EventExecutor executor;
+		private final Runnable onAdmitted;
+
+		private Ticket(EventExecutor executor, Runnable onAdmitted) {
+			this.executor = executor;
+			this.onAdmitted = onAdmitted;
+		}
+
+		/**
+		 * Whether the ticket holds a permit.
+		 * 
+		 * @return True if admitted
+		 */
+		public boolean isAdmitted() {
+			return state.get() == ADMITTED;
+		}
+
+		/**
+		 * Whether the request has been rejected because the queue is full.
+		 * 
+		 * @return True if rejected
+		 */
+		public boolean isRejected() {
+			return state.get() == REJECTED;
+		}
+
+		/**
+		 * Cancels a queued request. This is a no-op if the ticket has already been
+		 * admitted.
+		 */
+		public void cancel() {
+			state.compareAndSet(PENDING, CANCELED);
+		}
+
+		/**
+		 * Releases the permit. This is a no-op if the ticket has not been admitted
+		 * or has already been released.
+		 */
+		public void release() {
+			if (state.get() == ADMITTED && released.compareAndSet(false, true)) {
+				releasePermit();
+			}
+		}
+	}
+
+	/**
+	 * Token bucket of a single source address.
+	 */
+	private final class RateBucket {
+		private double tokens = perAddressBurst;
+		private long lastRefill;
+
+		RateBucket(long now) {
+			this.lastRefill = now;
+		}
+
+		synchronized boolean tryTake(long now) {
+			tokens = Math.min(perAddressBurst, tokens + (now - lastRefill) * perAddressRate / 1e9);
+			lastRefill = now;
+
+			if (tokens >= 1.0) {
+				tokens -= 1.0;
+				return true;
+			} else {
+				return false;
+			}
+		}
+
+		synchronized boolean isIdle(long now) {
+			return now - lastRefill > IDLE_BUCKET_NANOS;
+		}
+	}
+
+}
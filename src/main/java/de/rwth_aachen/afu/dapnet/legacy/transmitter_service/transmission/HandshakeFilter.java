@@ -0,0 +1,95 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ByteProcessor;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Inspects the first line received on a new connection before it is decoded.
+ * Connections that do not start with a welcome message ({@code [}) or whose
+ * first line exceeds the configured length are closed immediately. Once a
+ * plausible first line has passed, the filter removes itself from the
+ * pipeline.
+ * 
+ * @author Philipp Thiel
+ */
+class HandshakeFilter extends ChannelInboundHandlerAdapter {
+
+	private final HandshakeAdmission admission;
+	private final int maxLength;
+	private int bytesSeen = 0;
+
+	/**
+	 * Creates a new filter.
+	 * 
+	 * @param admission Admission control used to count rejected connections
+	 * @param maxLength Maximum length of the welcome message
+	 */
+	public HandshakeFilter(HandshakeAdmission admission, int maxLength) {
+		this.admission = admission;
+		this.maxLength = maxLength;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (!(msg instanceof ByteBuf)) {
+			ctx.fireChannelRead(msg);
+			return;
+		}
+
+		final ByteBuf buf = (ByteBuf) msg;
+		final int readable = buf.readableBytes();
+		if (readable == 0) {
+			ctx.fireChannelRead(msg);
+			return;
+		}
+
+		if (bytesSeen == 0 && buf.getByte(buf.readerIndex()) != '[') {
+			reject(ctx, buf);
+			return;
+		}
+
+		final int eol = buf.forEachByte(ByteProcessor.FIND_LF);
+		if (eol < 0) {
+			bytesSeen += readable;
+			if (bytesSeen > maxLength) {
+				reject(ctx, buf);
+				return;
+			}
+		} else if (bytesSeen + (eol - buf.readerIndex()) > maxLength) {
+			reject(ctx, buf);
+			return;
+		} else {
+			ctx.pipeline().remove(this);
+		}
+
+		ctx.fireChannelRead(msg);
+	}
+
+	private void reject(ChannelHandlerContext ctx, ByteBuf buf) {
+		ReferenceCountUtil.release(buf);
+		admission.recordRejected();
+		ctx.close();
+	}
+
+}
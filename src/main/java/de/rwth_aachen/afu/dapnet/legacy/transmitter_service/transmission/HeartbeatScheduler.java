@@ -0,0 +1,197 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend.TransmitterHeartbeatService;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+
+/**
+ * Coalesces transmitter activity into periodic heartbeats. Connections only
+ * record that the transmitter has been seen, a timer wheel checks every
+ * registered transmitter once per interval and posts at most one heartbeat if
+ * there was activity. The timer is shared with the caller and not stopped by
+ * this class. The heartbeat requests are performed asynchronously by
+ * the heartbeat service.
+ * 
+ * @author Philipp Thiel
+ */
+final class HeartbeatScheduler {
+
+	private static final Logger LOGGER = LogManager.getLogger();
+	private final TransmitterHeartbeatService service;
+	private final long intervalMillis;
+	private final Timer timer;
+	private volatile boolean stopped = false;
+	private final LongAdder sentCount = new LongAdder();
+	private final LongAdder suppressedCount = new LongAdder();
+
+	/**
+	 * Creates a new heartbeat scheduler.
+	 * 
+	 * @param service        Heartbeat service to use
+	 * @param timer          Timer to schedule the heartbeat checks on
+	 * @param intervalMillis Heartbeat interval in milliseconds
+	 */
+	public HeartbeatScheduler(TransmitterHeartbeatService service, Timer timer, long intervalMillis) {
+		this.service = Objects.requireNonNull(service, "Heartbeat service must not be null.");
+		this.timer = Objects.requireNonNull(timer, "Timer must not be null.");
+		this.intervalMillis = intervalMillis;
+	}
+
+	/**
+	 * Registers a transmitter. The returned registration must be canceled once
+	 * the transmitter disconnects.
+	 * 
+	 * @param transmitter Transmitter
+	 * @return Heartbeat registration
+	 */
+	public Registration register(Transmitter transmitter) {
+		Registration reg = new Registration(Objects.requireNonNull(transmitter, "Transmitter must not be null."));
+		reg.schedule();
+		return reg;
+	}
+
+	/**
+	 * Stops the scheduler. No further heartbeats will be sent, pending checks are
+	 * discarded once they fire or when the shared timer is stopped.
+	 */
+	public void shutdown() {
+		stopped = true;
+
+		LOGGER.info("Heartbeats sent: {}, suppressed: {}", getSentCount(), getSuppressedCount());
+	}
+
+	/**
+	 * Gets the number of heartbeats sent.
+	 * 
+	 * @return Number of heartbeats sent
+	 */
+	public long getSentCount() {
+		return sentCount.sum();
+	}
+
+	/**
+	 * Gets the number of heartbeats that have been suppressed because another
+	 * heartbeat for the same transmitter was sent in the same interval.
+	 * 
+	 * @return Number of heartbeats suppressed
+	 */
+	public long getSuppressedCount() {
+		return suppressedCount.sum();
+	}
+
+	/**
+	 * Heartbeat registration of a single transmitter.
+	 * 
+	 * @author Philipp Thiel
+	 */
+	final class Registration implements TimerTask {
+
+		private final Transmitter transmitter;
+		// Only written by the event loop of the connection
+		private volatile int seenCount;
+		// Only accessed by the timer thread
+		private int reportedCount;
+		private volatile Timeout timeout;
+		private volatile boolean canceled = false;
+
+		private Registration(Transmitter transmitter) {
+			this.transmitter = transmitter;
+		}
+
+		/**
+		 * Records activity of the transmitter. Must only be called from a single
+		 * thread, i.e. the event loop of the connection.
+		 */
+		public void markSeen() {
+			seenCount = seenCount + 1;
+		}
+
+		/**
+		 * Cancels the registration. No further heartbeats will be sent.
+		 */
+		public void cancel() {
+			canceled = true;
+
+			Timeout t = timeout;
+			if (t != null) {
+				t.cancel();
+			}
+		}
+
+		private void schedule() {
+			if (stopped) {
+				return;
+			}
+
+			try {
+				timeout = timer.newTimeout(this, intervalMillis, TimeUnit.MILLISECONDS);
+			} catch (IllegalStateException ex) {
+				// Timer has been stopped
+				LOGGER.debug("Heartbeat timer stopped, not scheduling heartbeat for '{}'.", transmitter.getName());
+			}
+		}
+
+		@Override
+		public void run(Timeout timeout) throws Exception {
+			if (canceled || stopped) {
+				return;
+			}
+
+			final int seen = seenCount;
+			final int delta = seen - reportedCount;
+			reportedCount = seen;
+
+			if (delta > 0) {
+				sentCount.increment();
+				suppressedCount.add(delta - 1);
+
+				postHeartbeat();
+			}
+
+			schedule();
+		}
+
+		private void postHeartbeat() {
+			LOGGER.debug("Sending heartbeat for transmitter '{}'", transmitter.getName());
+
+			try {
+				service.postHeartbeat(transmitter.getName(), transmitter.getAuthKey(), true).whenComplete((ok, ex) -> {
+					if (ex != null) {
+						LOGGER.error("Failed to send transmitter heartbeat for '{}': {}", transmitter.getName(),
+								ex.getMessage());
+					}
+				});
+			} catch (Exception ex) {
+				LOGGER.error("Failed to send transmitter heartbeat.", ex);
+			}
+		}
+
+	}
+
+}
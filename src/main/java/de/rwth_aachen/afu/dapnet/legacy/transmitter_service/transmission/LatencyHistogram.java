@@ -0,0 +1,113 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+/**
+ * Compact latency histogram with fixed power-of-two buckets. Bucket {@code i}
+ * counts values from {@code 2^(i-1)} up to below {@code 2^i} microseconds, the
+ * last bucket everything from {@code 2^24} microseconds (about 16.8 seconds)
+ * up. Percentiles are therefore only accurate up to a factor of two, which is
+ * good enough to tell a slow link from a fast one. Not thread-safe.
+ * 
+ * @author Philipp Thiel
+ */
+public final class LatencyHistogram {
+
+	private static final int BUCKET_COUNT = 26;
+	private final int[] buckets = new int[BUCKET_COUNT];
+	private long count;
+	private long sumMicros;
+	private long maxMicros;
+
+	/**
+	 * Records a latency value.
+	 * 
+	 * @param nanos Latency in nanoseconds, negative values are ignored.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			return;
+		}
+
+		final long micros = nanos / 1000;
+		final int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+		++buckets[bucket];
+		++count;
+		sumMicros += micros;
+		maxMicros = Math.max(maxMicros, micros);
+	}
+
+	/**
+	 * Gets the number of recorded values.
+	 * 
+	 * @return Number of values
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the mean of all recorded values.
+	 * 
+	 * @return Mean latency in milliseconds or 0 if no value has been recorded.
+	 */
+	public double getMeanMillis() {
+		return count > 0 ? sumMicros / (count * 1000.0) : 0.0;
+	}
+
+	/**
+	 * Gets the largest recorded value.
+	 * 
+	 * @return Maximum latency in milliseconds
+	 */
+	public double getMaxMillis() {
+		return maxMicros / 1000.0;
+	}
+
+	/**
+	 * Gets the upper bound of the bucket containing the given percentile.
+	 * 
+	 * @param percentile Percentile between 0 and 100
+	 * @return Latency in milliseconds or 0 if no value has been recorded.
+	 */
+	public double getPercentileMillis(double percentile) {
+		if (count == 0) {
+			return 0.0;
+		}
+
+		final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT - 1; ++i) {
+			seen += buckets[i];
+			if (seen >= rank) {
+				// Never report more than has actually been observed
+				return Math.min(1L << i, maxMicros) / 1000.0;
+			}
+		}
+
+		return maxMicros / 1000.0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("n=%d mean=%.1fms p50=%.1fms p90=%.1fms max=%.1fms", count, getMeanMillis(),
+				getPercentileMillis(50), getPercentileMillis(90), getMaxMillis());
+	}
+
+}
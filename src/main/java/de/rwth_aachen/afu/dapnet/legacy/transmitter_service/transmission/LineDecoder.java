@@ -0,0 +1,151 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.TransmitterClient.AckType;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.ByteProcessor;
+
+/**
+ * Splits the inbound byte stream into lines. Message acks ({@code #XX +},
+ * {@code #XX %} or {@code #XX -}) are parsed directly from the buffer into a
+ * reused {@link MessageAck}, all other lines are decoded into US-ASCII strings.
+ * Lines may be terminated by {@code \n} or {@code \r\n}.
+ * 
+ * @author Philipp Thiel
+ */
+class LineDecoder extends ByteToMessageDecoder {
+
+	private static final int ACK_LENGTH = 5;
+	private static final byte[] HEX_VALUES = new byte[256];
+	private final MessageAck ack = new MessageAck();
+	private final int maxLength;
+	private boolean discarding = false;
+
+	static {
+		for (int i = 0; i < HEX_VALUES.length; ++i) {
+			HEX_VALUES[i] = -1;
+		}
+
+		for (int i = 0; i < 10; ++i) {
+			HEX_VALUES['0' + i] = (byte) i;
+		}
+
+		for (int i = 0; i < 6; ++i) {
+			HEX_VALUES['A' + i] = (byte) (10 + i);
+			HEX_VALUES['a' + i] = (byte) (10 + i);
+		}
+	}
+
+	/**
+	 * Creates a new line decoder.
+	 * 
+	 * @param maxLength Maximum line length (excluding the line delimiter)
+	 */
+	public LineDecoder(int maxLength) {
+		this.maxLength = maxLength;
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+		final int start = in.readerIndex();
+		final int eol = in.forEachByte(ByteProcessor.FIND_LF);
+		if (eol < 0) {
+			if (in.readableBytes() > maxLength) {
+				// Drop everything until the next line delimiter
+				in.skipBytes(in.readableBytes());
+				if (!discarding) {
+					discarding = true;
+					ctx.fireExceptionCaught(new MalformedFrameException("Line exceeds " + maxLength + " bytes."));
+				}
+			}
+
+			return;
+		}
+
+		in.readerIndex(eol + 1);
+		if (discarding) {
+			// Tail of a discarded line
+			discarding = false;
+			return;
+		}
+
+		int length = eol - start;
+		if (length > 0 && in.getByte(eol - 1) == '\r') {
+			--length;
+		}
+
+		if (length > maxLength) {
+			ctx.fireExceptionCaught(new MalformedFrameException("Line exceeds " + maxLength + " bytes."));
+		} else if (length > 0 && in.getByte(start) == '#') {
+			if (parseAck(in, start, length)) {
+				out.add(ack);
+			} else {
+				ctx.fireExceptionCaught(new MalformedFrameException(
+						"Invalid response received: " + in.toString(start, length, StandardCharsets.US_ASCII)));
+			}
+		} else {
+			out.add(in.toString(start, length, StandardCharsets.US_ASCII));
+		}
+	}
+
+	/**
+	 * Parses an ack line into the reused ack object.
+	 * 
+	 * @param in     Input buffer
+	 * @param start  Start index of the line
+	 * @param length Line length without delimiter
+	 * @return {@code true} if the line is a valid ack
+	 */
+	private boolean parseAck(ByteBuf in, int start, int length) {
+		if (length != ACK_LENGTH || in.getByte(start + 3) != ' ') {
+			return false;
+		}
+
+		final int high = HEX_VALUES[in.getByte(start + 1) & 0xFF];
+		final int low = HEX_VALUES[in.getByte(start + 2) & 0xFF];
+		if (high < 0 || low < 0) {
+			return false;
+		}
+
+		final AckType type;
+		switch (in.getByte(start + 4)) {
+		case '+':
+			type = AckType.OK;
+			break;
+		case '%':
+			type = AckType.RETRY;
+			break;
+		case '-':
+			type = AckType.ERROR;
+			break;
+		default:
+			return false;
+		}
+
+		ack.set((high << 4) | low, type);
+		return true;
+	}
+
+}
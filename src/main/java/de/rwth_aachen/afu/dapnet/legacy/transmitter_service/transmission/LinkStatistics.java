@@ -0,0 +1,169 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.TransmitterClient.AckType;
+
+/**
+ * Link quality statistics of a transmitter session. Records the round trip
+ * times of the handshake sync loops, the latency between sending a message and
+ * receiving its ack as well as the number of acks by type. Updates happen on
+ * the event loop of the session, readers on other threads see a consistent
+ * state as all methods are synchronized.
+ * 
+ * @author Philipp Thiel
+ */
+public final class LinkStatistics {
+
+	private final LatencyHistogram handshakeRtt = new LatencyHistogram();
+	private final LatencyHistogram ackLatency = new LatencyHistogram();
+	private long okCount;
+	private long retryCount;
+	private long errorCount;
+	private long invalidCount;
+	private long timeoutCount;
+
+	/**
+	 * Records the round trip time of a handshake sync loop.
+	 * 
+	 * @param nanos Round trip time in nanoseconds
+	 */
+	synchronized void recordHandshakeRtt(long nanos) {
+		handshakeRtt.record(nanos);
+	}
+
+	/**
+	 * Records a received message ack.
+	 * 
+	 * @param type         Ack type
+	 * @param latencyNanos Time since the message has been sent or a negative
+	 *                     value if it cannot be assigned to a transmission.
+	 */
+	synchronized void recordAck(AckType type, long latencyNanos) {
+		switch (type) {
+		case OK:
+			++okCount;
+			break;
+		case RETRY:
+			++retryCount;
+			break;
+		case ERROR:
+			++errorCount;
+			break;
+		}
+
+		ackLatency.record(latencyNanos);
+	}
+
+	/**
+	 * Records an ack that does not match any message awaiting an ack.
+	 */
+	synchronized void recordInvalidAck() {
+		++invalidCount;
+	}
+
+	/**
+	 * Records an ack timeout.
+	 */
+	synchronized void recordTimeout() {
+		++timeoutCount;
+	}
+
+	/**
+	 * Gets the 50th percentile of the handshake round trip time.
+	 * 
+	 * @return Round trip time in milliseconds
+	 */
+	public synchronized double getHandshakeRttMedian() {
+		return handshakeRtt.getPercentileMillis(50);
+	}
+
+	/**
+	 * Gets the given percentile of the message ack latency.
+	 * 
+	 * @param percentile Percentile between 0 and 100
+	 * @return Ack latency in milliseconds
+	 */
+	public synchronized double getAckLatency(double percentile) {
+		return ackLatency.getPercentileMillis(percentile);
+	}
+
+	/**
+	 * Gets the number of OK acks.
+	 * 
+	 * @return OK count
+	 */
+	public synchronized long getOkCount() {
+		return okCount;
+	}
+
+	/**
+	 * Gets the number of RETRY acks, i.e. messages the transmitter could not
+	 * accept.
+	 * 
+	 * @return Retry count
+	 */
+	public synchronized long getRetryCount() {
+		return retryCount;
+	}
+
+	/**
+	 * Gets the number of ERROR acks.
+	 * 
+	 * @return Error count
+	 */
+	public synchronized long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * Gets the number of acks that did not match a message.
+	 * 
+	 * @return Invalid ack count
+	 */
+	public synchronized long getInvalidCount() {
+		return invalidCount;
+	}
+
+	/**
+	 * Gets the number of ack timeouts.
+	 * 
+	 * @return Timeout count
+	 */
+	public synchronized long getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	/**
+	 * Gets the share of acks that were RETRY or ERROR.
+	 * 
+	 * @return Failure rate between 0 and 1
+	 */
+	public synchronized double getFailureRate() {
+		final long total = okCount + retryCount + errorCount;
+		return total > 0 ? (double) (retryCount + errorCount) / total : 0.0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("handshake rtt [%s], ack latency [%s], ok=%d retry=%d error=%d invalid=%d timeouts=%d",
+				handshakeRtt, ackLatency, okCount, retryCount, errorCount, invalidCount, timeoutCount);
+	}
+
+}
@@ -0,0 +1,34 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+/**
+ * Exception thrown if a malformed frame is received from a transmitter. This
+ * exception does not capture a stack trace as it is raised from the decoder
+ * and only the message is of interest.
+ * 
+ * @author Philipp Thiel
+ */
+public class MalformedFrameException extends TransmitterException {
+	private static final long serialVersionUID = 1L;
+
+	public MalformedFrameException(String message) {
+		super(message, false);
+	}
+}
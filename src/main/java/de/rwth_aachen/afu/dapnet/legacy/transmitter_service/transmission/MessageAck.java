@@ -0,0 +1,85 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.TransmitterClient.AckType;
+
+/**
+ * A message acknowledgement received from a transmitter ({@code #XX +}). The
+ * instance is owned by the {@link LineDecoder} of a channel and is reused for
+ * every ack, so it must not be retained beyond the current read.
+ * 
+ * @author Philipp Thiel
+ */
+final class MessageAck {
+
+	private int sequenceNumber;
+	private AckType type;
+
+	/**
+	 * Sets the ack values.
+	 * 
+	 * @param sequenceNumber Sequence number
+	 * @param type           Ack type
+	 */
+	void set(int sequenceNumber, AckType type) {
+		this.sequenceNumber = sequenceNumber;
+		this.type = type;
+	}
+
+	/**
+	 * Gets the sequence number.
+	 * 
+	 * @return Sequence number
+	 */
+	public int getSequenceNumber() {
+		return sequenceNumber;
+	}
+
+	/**
+	 * Gets the ack type.
+	 * 
+	 * @return Ack type
+	 */
+	public AckType getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the ack in its wire format, e.g. {@code #04 +}.
+	 */
+	@Override
+	public String toString() {
+		char c;
+		switch (type) {
+		case OK:
+			c = '+';
+			break;
+		case RETRY:
+			c = '%';
+			break;
+		default:
+			c = '-';
+			break;
+		}
+
+		return String.format("#%02X %c", sequenceNumber, c);
+	}
+
+}
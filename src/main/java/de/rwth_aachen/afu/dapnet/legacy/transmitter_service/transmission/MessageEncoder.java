@@ -21,12 +21,20 @@ package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
 import java.util.List;
 
 import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.TransmitterClient.Message;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
 
 /**
- * Encodes a {@link PagerMessage} into string.
+ * Encodes a {@link PagerMessage} into its wire format. Only the sequence number
+ * prefix differs between transmitters, so the rest of the frame is encoded once
+ * per message into a shared pooled direct buffer, before a broadcast or on the
+ * first write otherwise. Each frame is written as a small prefix buffer followed
+ * by a retained slice of the shared body. The body is released once all
+ * transmitters are done with the message, see
+ * {@link PagerMessage#removeRecipient()}.
  * 
  * @author Philipp Thiel
  */
@@ -39,10 +47,59 @@ class MessageEncoder extends MessageToMessageEncoder<Message> {
 	public static final int MT_NUMERIC = 5;
 	public static final int MT_ALPHANUM = 6;
 
+	static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D',
+			'E', 'F' };
+	// "#XX "
+	private static final int PREFIX_LENGTH = 4;
+	// "#XX " + "T:" + ":" + ":" + "S:" + "\n"
+	private static final int FIXED_FRAME_LENGTH = 11;
+
+	/**
+	 * Gets the number of bytes of an encoded message.
+	 * 
+	 * @param pm Message
+	 * @return Encoded frame length in bytes
+	 */
+	static int getEncodedLength(PagerMessage pm) {
+		return FIXED_FRAME_LENGTH + hexLength(pm.getSendSpeed().getValue()) + hexLength(pm.getAddress())
+				+ pm.getContentBytes().length;
+	}
+
+	/**
+	 * Gets the sequence independent part of the encoded message, encoding it on
+	 * first use. The buffer is owned by the message and shared by all
+	 * transmitters, it must not be modified or released, write a retained slice
+	 * of it instead. The caller must hold the message, see
+	 * {@link PagerMessage#addRecipient()}.
+	 * 
+	 * @param pm Message
+	 * @return Buffer containing the frame without the sequence number
+	 */
+	static ByteBuf getEncodedBody(PagerMessage pm) {
+		final ByteBuf body = pm.getEncodedBody();
+		if (body != null) {
+			return body;
+		}
+
+		// Concurrent callers may encode twice, only one result is kept
+		return pm.setEncodedBody(encodeBody(pm));
+	}
+
 	@Override
 	protected void encode(ChannelHandlerContext ctx, Message msg, List<Object> out) throws Exception {
-		final PagerMessage pm = msg.getMessage();
+		// #%02X 
+		final int seq = msg.getSequenceNumber();
+		final ByteBuf prefix = ctx.alloc().ioBuffer(PREFIX_LENGTH);
+		prefix.writeByte('#');
+		prefix.writeByte(HEX_DIGITS[(seq >>> 4) & 0xF]);
+		prefix.writeByte(HEX_DIGITS[seq & 0xF]);
+		prefix.writeByte(' ');
+
+		out.add(prefix);
+		out.add(getEncodedBody(msg.getMessage()).retainedSlice());
+	}
 
+	private static ByteBuf encodeBody(PagerMessage pm) {
 		// Mostly adapted from Sven Jung
 		// See Diplomarbeit Jansen Page 30
 		int type = 0;
@@ -55,10 +112,51 @@ class MessageEncoder extends MessageToMessageEncoder<Message> {
 			break;
 		}
 
-		String encoded = String.format("#%02X %s:%X:%X:%s:%s\n", msg.getSequenceNumber(), type,
-				pm.getSendSpeed().getValue(), pm.getAddress(), pm.getSubAddress().getValue(), pm.getContent());
+		// %s:%X:%X:%s:%s\n
+		// Direct memory is written to the socket without another copy
+		final int length = getEncodedLength(pm) - PREFIX_LENGTH;
+		final ByteBuf out = PooledByteBufAllocator.DEFAULT.directBuffer(length, length);
+		// Type and sub-address are single decimal digits
+		out.writeByte('0' + type);
+		out.writeByte(':');
+		writeHex(out, pm.getSendSpeed().getValue());
+		out.writeByte(':');
+		writeHex(out, pm.getAddress());
+		out.writeByte(':');
+		out.writeByte('0' + pm.getSubAddress().getValue());
+		out.writeByte(':');
+		// Content has been transcoded to the POCSAG character set on ingestion
+		out.writeBytes(pm.getContentBytes());
+		out.writeByte('\n');
+
+		return out;
+	}
+
+	/**
+	 * Gets the number of hex digits required to represent the value (unsigned, no
+	 * leading zeros).
+	 * 
+	 * @param value Value
+	 * @return Number of hex digits
+	 */
+	private static int hexLength(int value) {
+		if (value == 0) {
+			return 1;
+		}
+
+		return (Integer.SIZE - Integer.numberOfLeadingZeros(value) + 3) >>> 2;
+	}
 
-		out.add(encoded);
+	/**
+	 * Writes the value as upper case hex number without leading zeros.
+	 * 
+	 * @param out   Output buffer
+	 * @param value Value to write (treated as unsigned)
+	 */
+	private static void writeHex(ByteBuf out, int value) {
+		for (int shift = (hexLength(value) - 1) << 2; shift >= 0; shift -= 4) {
+			out.writeByte(HEX_DIGITS[(value >>> shift) & 0xF]);
+		}
 	}
 
 }
@@ -0,0 +1,550 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.ContentType;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.Priority;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.SendSpeed;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.SubAddress;
+
+/**
+ * Append-only journal of the messages queued for a single transmitter. The
+ * journal consists of memory-mapped segment files. A message is recorded when
+ * it is queued and a remove record is appended once it has been acked or
+ * dropped, so the messages still pending can be replayed after a reconnect or a
+ * restart of the service. Segments without pending messages are deleted, the
+ * few pending messages of an old segment are copied to the current one.
+ * <p>
+ * Messages are either loaded (held in memory by a client) or spilled (only
+ * stored in the journal). All messages are spilled after the journal has been
+ * opened or unloaded. Spilled messages are loaded by priority, then in the order
+ * they were queued.
+ * 
+ * @author Philipp Thiel
+ */
+final class MessageJournal {
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final String SEGMENT_SUFFIX = ".journal";
+	private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+	// Segment count above which the oldest segment is compacted
+	private static final int COMPACTION_THRESHOLD = 4;
+	private static final byte RECORD_ADD = 1;
+	private static final byte RECORD_REMOVE = 2;
+	// Length + type + id, the length is written last to commit a record
+	private static final int RECORD_HEADER_LENGTH = 4 + 1 + 8;
+	// Timestamp + priority + address + sub-address + type + speed + content length
+	private static final int MESSAGE_FIELDS_LENGTH = 8 + 1 + 4 + 1 + 1 + 1 + 2;
+	private static final int MAX_CONTENT_LENGTH = 0xFFFF;
+	private static final long NANOS_PER_MILLI = 1_000_000L;
+	private static final Priority[] PRIORITIES = Priority.values();
+	private static final ContentType[] CONTENT_TYPES = ContentType.values();
+	private final Path directory;
+	private final int segmentSize;
+	private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+	private final Map<Long, Location> records = new LinkedHashMap<>();
+	private final Map<PagerMessage, Long> loaded = new IdentityHashMap<>();
+	private final List<ArrayDeque<Long>> spilled = new ArrayList<>(PRIORITIES.length);
+	private int spilledCount = 0;
+	private long nextId = 1;
+	private long nextSegment = 1;
+	private boolean compacting = false;
+	private boolean disabled = false;
+
+	private MessageJournal(Path directory, int segmentSize) {
+		this.directory = directory;
+		this.segmentSize = Math.max(MIN_SEGMENT_SIZE, segmentSize);
+		for (int i = 0; i < PRIORITIES.length; ++i) {
+			spilled.add(new ArrayDeque<>());
+		}
+	}
+
+	/**
+	 * Opens the journal in the given directory and reads all pending messages.
+	 * The directory is created if it does not exist.
+	 * 
+	 * @param directory   Journal directory of the transmitter
+	 * @param segmentSize Size of a segment file in bytes
+	 * @return Journal with all pending messages spilled
+	 * @throws IOException If the journal could not be read.
+	 */
+	public static MessageJournal open(Path directory, int segmentSize) throws IOException {
+		final MessageJournal journal = new MessageJournal(directory, segmentSize);
+		journal.replay();
+		return journal;
+	}
+
+	/**
+	 * Records a queued message.
+	 * 
+	 * @param message Message to record
+	 * @param spill   Whether the message is only kept in the journal, it can be
+	 *                loaded again using {@link #pollSpilled()}.
+	 * @return True if the message has been recorded, false if journaling failed.
+	 */
+	public synchronized boolean append(PagerMessage message, boolean spill) {
+		if (disabled) {
+			return false;
+		} else if (!spill && loaded.containsKey(message)) {
+			// The same message object is queued twice, one record is enough
+			return true;
+		}
+
+		// The 7-bit POCSAG charset is a subset of UTF-8, so the record format stays
+		// the same
+		final byte[] content = message.getContentBytes();
+		if (content.length > MAX_CONTENT_LENGTH) {
+			return false;
+		}
+
+		final int length = RECORD_HEADER_LENGTH + MESSAGE_FIELDS_LENGTH + content.length;
+		final Segment segment = reserve(length);
+		if (segment == null) {
+			return false;
+		}
+
+		final long id = nextId++;
+		final ByteBuffer out = segment.buffer.duplicate();
+		out.position(segment.position + 4);
+		out.put(RECORD_ADD);
+		out.putLong(id);
+		out.putLong(message.getTimestampMillis());
+		out.put((byte) message.getPriority().ordinal());
+		out.putInt(message.getAddress());
+		out.put((byte) message.getSubAddress().getValue());
+		out.put((byte) message.getContentType().ordinal());
+		out.put((byte) message.getSendSpeed().getValue());
+		out.putShort((short) content.length);
+		out.put(content);
+
+		records.put(id, segment.track(segment.commit(length), length, message.getPriority()));
+		if (spill) {
+			spilled.get(message.getPriority().ordinal()).add(id);
+			++spilledCount;
+		} else {
+			loaded.put(message, id);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Removes a loaded message from the journal after it has been acked or
+	 * dropped. This is a no-op if the message is not recorded.
+	 * 
+	 * @param message Message to remove
+	 */
+	public synchronized void remove(PagerMessage message) {
+		final Long id = loaded.remove(message);
+		if (id == null) {
+			return;
+		}
+
+		final Location location = records.remove(id);
+		if (location == null) {
+			return;
+		}
+
+		if (!disabled) {
+			final Segment segment = reserve(RECORD_HEADER_LENGTH);
+			if (segment != null) {
+				final ByteBuffer out = segment.buffer.duplicate();
+				out.position(segment.position + 4);
+				out.put(RECORD_REMOVE);
+				out.putLong(id);
+				segment.commit(RECORD_HEADER_LENGTH);
+			}
+		}
+
+		location.release();
+		releaseSegments();
+	}
+
+	/**
+	 * Checks if there are spilled messages.
+	 * 
+	 * @return True if there are spilled messages
+	 */
+	public synchronized boolean hasSpilled() {
+		return spilledCount > 0;
+	}
+
+	/**
+	 * Gets the number of spilled messages.
+	 * 
+	 * @return Number of spilled messages
+	 */
+	public synchronized int getSpilledCount() {
+		return spilledCount;
+	}
+
+	/**
+	 * Loads the oldest spilled message of the highest priority.
+	 * 
+	 * @return Spilled message or {@code null} if there is none.
+	 */
+	public synchronized PagerMessage pollSpilled() {
+		for (ArrayDeque<Long> queue : spilled) {
+			final PagerMessage message = pollSpilled(queue);
+			if (message != null) {
+				return message;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Puts a loaded message back in front of the spilled messages of its
+	 * priority, e.g. if the queue has no room for it yet. This is a no-op if the
+	 * message is not recorded.
+	 *
+	 * @param message Message to spill again
+	 */
+	public synchronized void respill(PagerMessage message) {
+		final Long id = loaded.remove(message);
+		if (id == null) {
+			return;
+		}
+
+		final Location location = records.get(id);
+		if (location != null) {
+			spilled.get(location.priority.ordinal()).addFirst(id);
+			++spilledCount;
+		}
+	}
+
+	private PagerMessage pollSpilled(ArrayDeque<Long> queue) {
+		Long id;
+		while ((id = queue.poll()) != null) {
+			--spilledCount;
+			final Location location = records.get(id);
+			if (location == null) {
+				continue;
+			}
+
+			try {
+				final PagerMessage message = location.read();
+				loaded.put(message, id);
+				return message;
+			} catch (RuntimeException ex) {
+				logger.warn("Dropping corrupted journal record {} in {}.", id, directory);
+				records.remove(id);
+				location.release();
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Marks all pending messages as spilled, e.g. after the transmitter has
+	 * disconnected. The messages are replayed in the order they were queued.
+	 */
+	public synchronized void unload() {
+		loaded.clear();
+		spillAll();
+		releaseSegments();
+	}
+
+	private void spillAll() {
+		spilled.forEach(ArrayDeque::clear);
+		records.forEach((id, location) -> spilled.get(location.priority.ordinal()).add(id));
+		spilledCount = records.size();
+	}
+
+	/**
+	 * Writes all segments to disk and disables the journal.
+	 */
+	public synchronized void close() {
+		disabled = true;
+		loaded.clear();
+		spilled.forEach(ArrayDeque::clear);
+		spilledCount = 0;
+		for (Segment segment : segments) {
+			segment.buffer.force();
+		}
+	}
+
+	private void replay() throws IOException {
+		Files.createDirectories(directory);
+
+		final List<Path> files;
+		try (Stream<Path> stream = Files.list(directory)) {
+			files = stream.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted()
+					.collect(Collectors.toList());
+		}
+
+		for (Path file : files) {
+			final long index;
+			try {
+				final String name = file.getFileName().toString();
+				index = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+			} catch (NumberFormatException ex) {
+				logger.warn("Ignoring unexpected journal file {}.", file);
+				continue;
+			}
+
+			final Segment segment = Segment.map(file, (int) Math.max(Files.size(file), segmentSize));
+			segments.addLast(segment);
+			nextSegment = Math.max(nextSegment, index + 1);
+			scan(segment);
+		}
+
+		spillAll();
+		releaseSegments();
+
+		if (!records.isEmpty()) {
+			logger.info("Replaying {} journaled messages from {}.", records.size(), directory);
+		}
+	}
+
+	private void scan(Segment segment) {
+		final ByteBuffer in = segment.buffer;
+		int position = 0;
+		while (position + RECORD_HEADER_LENGTH <= in.capacity()) {
+			// Zero length marks the end of the written records
+			final int length = in.getInt(position) + 4;
+			if (length < RECORD_HEADER_LENGTH || position + length > in.capacity()) {
+				break;
+			}
+
+			final byte type = in.get(position + 4);
+			final long id = in.getLong(position + 5);
+			if (type == RECORD_ADD) {
+				final int priority = in.get(position + RECORD_HEADER_LENGTH + 8);
+				if (priority < 0 || priority >= PRIORITIES.length) {
+					break;
+				}
+
+				final Location previous = records.put(id, segment.track(position, length, PRIORITIES[priority]));
+				if (previous != null) {
+					// Message has been copied during compaction
+					previous.release();
+				}
+			} else if (type == RECORD_REMOVE) {
+				final Location location = records.remove(id);
+				if (location != null) {
+					location.release();
+				}
+			} else {
+				break;
+			}
+
+			nextId = Math.max(nextId, id + 1);
+			position += length;
+		}
+
+		segment.position = position;
+	}
+
+	private Segment reserve(int length) {
+		Segment segment = segments.peekLast();
+		while (segment == null || segment.position + length > segment.buffer.capacity()) {
+			segment = rotate(length);
+			if (segment == null) {
+				return null;
+			}
+		}
+
+		return segment;
+	}
+
+	private Segment rotate(int length) {
+		final Path file = directory.resolve(String.format("%016d%s", nextSegment++, SEGMENT_SUFFIX));
+		try {
+			segments.addLast(Segment.map(file, Math.max(segmentSize, length)));
+		} catch (IOException ex) {
+			logger.error("Failed to create journal segment {}, journaling disabled.", file, ex);
+			disabled = true;
+			return null;
+		}
+
+		releaseSegments();
+		if (!compacting) {
+			compact();
+		}
+
+		return segments.peekLast();
+	}
+
+	private void compact() {
+		final Segment oldest = segments.peekFirst();
+		if (segments.size() <= COMPACTION_THRESHOLD || oldest.liveBytes > segmentSize / 2) {
+			return;
+		}
+
+		// Copy the remaining messages of the oldest segment, so it can be deleted
+		compacting = true;
+		try {
+			for (Location location : records.values()) {
+				if (location.segment == oldest && !relocate(location)) {
+					break;
+				}
+			}
+		} finally {
+			compacting = false;
+		}
+
+		releaseSegments();
+	}
+
+	private boolean relocate(Location location) {
+		final Segment target = reserve(location.length);
+		if (target == null) {
+			return false;
+		}
+
+		final ByteBuffer in = location.segment.buffer.duplicate();
+		in.position(location.position + 4);
+		in.limit(location.position + location.length);
+		final ByteBuffer out = target.buffer.duplicate();
+		out.position(target.position + 4);
+		out.put(in);
+
+		location.release();
+		location.segment = target;
+		location.position = target.commit(location.length);
+		target.track(location.position, location.length, location.priority);
+		return true;
+	}
+
+	private void releaseSegments() {
+		// Only the oldest segments can be deleted, newer ones may contain remove
+		// records for their messages
+		while (segments.size() > 1 && segments.peekFirst().live == 0) {
+			segments.pollFirst().delete();
+		}
+	}
+
+	/**
+	 * A memory-mapped journal file.
+	 */
+	private static final class Segment {
+		private final Path path;
+		private final MappedByteBuffer buffer;
+		private int position;
+		private int live;
+		private int liveBytes;
+
+		private Segment(Path path, MappedByteBuffer buffer) {
+			this.path = path;
+			this.buffer = buffer;
+		}
+
+		static Segment map(Path path, int size) throws IOException {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				// The mapping stays valid after the channel is closed
+				return new Segment(path, channel.map(MapMode.READ_WRITE, 0, size));
+			}
+		}
+
+		/**
+		 * Commits the record written at the current position by writing its length.
+		 * 
+		 * @return Position of the record
+		 */
+		int commit(int length) {
+			buffer.putInt(position, length - 4);
+			final int start = position;
+			position += length;
+			return start;
+		}
+
+		/**
+		 * Counts a message record as pending.
+		 * 
+		 * @return Location of the record
+		 */
+		Location track(int position, int length, Priority priority) {
+			++live;
+			liveBytes += length;
+			return new Location(this, position, length, priority);
+		}
+
+		void delete() {
+			try {
+				// The mapping is released by the garbage collector
+				Files.deleteIfExists(path);
+			} catch (IOException ex) {
+				logger.warn("Failed to delete journal segment {}.", path, ex);
+			}
+		}
+	}
+
+	/**
+	 * Location of a pending message record.
+	 */
+	private static final class Location {
+		private Segment segment;
+		private int position;
+		private final int length;
+		private final Priority priority;
+
+		Location(Segment segment, int position, int length, Priority priority) {
+			this.segment = segment;
+			this.position = position;
+			this.length = length;
+			this.priority = priority;
+		}
+
+		void release() {
+			--segment.live;
+			segment.liveBytes -= length;
+		}
+
+		PagerMessage read() {
+			final ByteBuffer in = segment.buffer.duplicate();
+			in.position(position + RECORD_HEADER_LENGTH);
+			final long timestamp = in.getLong() * NANOS_PER_MILLI;
+			final Priority priority = PRIORITIES[in.get()];
+			final int address = in.getInt();
+			final SubAddress subAddress = SubAddress.fromValue(in.get());
+			final ContentType type = CONTENT_TYPES[in.get()];
+			final SendSpeed sendSpeed = SendSpeed.fromValue(in.get());
+			final byte[] content = new byte[in.getShort() & MAX_CONTENT_LENGTH];
+			in.get(content);
+
+			// Stored in the POCSAG character set, must not be transcoded again
+			return new PagerMessage(timestamp, priority, address, subAddress, type, sendSpeed, content);
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.util.Queue;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.ServiceConfiguration;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.Priority;
+
+/**
+ * Selects the priority queue of a transmitter client the next message is taken
+ * from. Schedulers are confined to the event loop of their client.
+ * 
+ * @author Philipp Thiel
+ */
+interface MessageScheduler {
+
+	/**
+	 * Selects the queue to take the next message from.
+	 * 
+	 * @param queues    Message queues indexed by priority ordinal
+	 * @param nowMillis Current time in milliseconds since the epoch
+	 * @return Priority ordinal of the selected queue or -1 if all queues are
+	 *         empty.
+	 */
+	int select(Queue<PagerMessage>[] queues, long nowMillis);
+
+	/**
+	 * Called after a message has been taken from the selected queue.
+	 * 
+	 * @param message Message taken
+	 */
+	default void onSelected(PagerMessage message) {
+	}
+
+	/**
+	 * Creates the scheduler configured for transmitter clients.
+	 * 
+	 * @param configuration Service configuration
+	 * @return Message scheduler
+	 */
+	static MessageScheduler create(ServiceConfiguration configuration) {
+		switch (configuration.getSchedulingPolicy()) {
+		case WEIGHTED:
+			final int[] weights = new int[Priority.values().length];
+			for (Priority priority : Priority.values()) {
+				weights[priority.ordinal()] = configuration.getSchedulingWeight(priority);
+			}
+
+			return new WeightedScheduler(weights, configuration.getAgingThreshold() * 1000L);
+		default:
+			return new StrictScheduler();
+		}
+	}
+
+	/**
+	 * Finds the queue whose head message has waited the longest beyond the aging
+	 * threshold. EMERGENCY messages are not considered, they are always sent
+	 * first anyway.
+	 * 
+	 * @param queues      Message queues indexed by priority ordinal
+	 * @param nowMillis   Current time in milliseconds since the epoch
+	 * @param agingMillis Aging threshold in milliseconds, 0 disables aging
+	 * @return Priority ordinal of the queue or -1 if no message is overdue.
+	 */
+	static int selectAged(Queue<PagerMessage>[] queues, long nowMillis, long agingMillis) {
+		if (agingMillis <= 0) {
+			return -1;
+		}
+
+		int selected = -1;
+		long oldest = nowMillis - agingMillis;
+		for (int i = Priority.EMERGENCY.ordinal() + 1; i < queues.length; ++i) {
+			final PagerMessage head = queues[i].peek();
+			if (head != null && head.getTimestampMillis() < oldest) {
+				oldest = head.getTimestampMillis();
+				selected = i;
+			}
+		}
+
+		return selected;
+	}
+
+}
@@ -18,7 +18,12 @@
 
 package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import io.netty.buffer.ByteBuf;
 
 /**
  * This class represents a pager message.
@@ -134,13 +139,50 @@ public class PagerMessage implements Comparable<PagerMessage> {
 		}
 	}
 
-	private final Instant timestamp;
-	private final Priority priority;
+	// Packed header layout: priority (bits 0-2), sub-address (bits 3-4), content
+	// type (bit 5) and send speed (bits 6-7).
+	private static final int PRIORITY_SHIFT = 0;
+	private static final int SUBADDRESS_SHIFT = 3;
+	private static final int TYPE_SHIFT = 5;
+	private static final int SPEED_SHIFT = 6;
+	private static final int PRIORITY_MASK = 0x7;
+	private static final int SUBADDRESS_MASK = 0x3;
+	private static final int TYPE_MASK = 0x1;
+	private static final int SPEED_MASK = 0x3;
+	private static final Priority[] PRIORITIES = Priority.values();
+	private static final SubAddress[] SUBADDRESSES = SubAddress.values();
+	private static final ContentType[] CONTENT_TYPES = ContentType.values();
+	private static final SendSpeed[] SEND_SPEEDS = SendSpeed.values();
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+	private static final long NANOS_PER_MILLI = 1_000_000L;
+	private static final long CLOCK_RESYNC_NANOS = 60 * NANOS_PER_SECOND;
+	private static final AtomicIntegerFieldUpdater<PagerMessage> RECIPIENTS = AtomicIntegerFieldUpdater
+			.newUpdater(PagerMessage.class, "recipients");
+	private static final AtomicReferenceFieldUpdater<PagerMessage, ByteBuf> ENCODED_BODY = AtomicReferenceFieldUpdater
+			.newUpdater(PagerMessage.class, ByteBuf.class, "encodedBody");
+	private static volatile ClockAnchor clockAnchor = new ClockAnchor();
+	private final long timestamp;
+	private final int header;
 	private final int address;
-	private final SubAddress subAddress;
-	private final ContentType type;
-	private final SendSpeed sendSpeed;
-	private final String content;
+	private final byte[] content;
+	private volatile ByteBuf encodedBody;
+	private volatile int recipients;
+
+	/**
+	 * Pairs a wall clock reading with a monotonic clock reading so that message
+	 * timestamps can be taken from {@link System#nanoTime()}. The anchor is
+	 * renewed periodically to follow wall clock adjustments.
+	 */
+	private static final class ClockAnchor {
+		private final long epochNanos;
+		private final long ticks;
+
+		ClockAnchor() {
+			final Instant now = Instant.now();
+			ticks = System.nanoTime();
+			epochNanos = now.getEpochSecond() * NANOS_PER_SECOND + now.getNano();
+		}
+	}
 
 	/**
 	 * Constructs a new pager message.
@@ -155,13 +197,8 @@ public class PagerMessage implements Comparable<PagerMessage> {
 	 */
 	public PagerMessage(Instant timestamp, Priority priority, int address, SubAddress subAddress, ContentType type,
 			SendSpeed sendSpeed, String content) {
-		this.timestamp = timestamp;
-		this.priority = priority;
-		this.address = address;
-		this.subAddress = subAddress;
-		this.type = type;
-		this.sendSpeed = sendSpeed;
-		this.content = content;
+		this(timestamp.getEpochSecond() * NANOS_PER_SECOND + timestamp.getNano(), priority, address, subAddress, type,
+				sendSpeed, content);
 	}
 
 	/**
@@ -176,19 +213,94 @@ public class PagerMessage implements Comparable<PagerMessage> {
 	 */
 	public PagerMessage(Priority priority, int address, SubAddress subAddress, ContentType type, SendSpeed sendSpeed,
 			String content) {
-		this(Instant.now(), priority, address, subAddress, type, sendSpeed, content);
+		this(currentTimeNanos(), priority, address, subAddress, type, sendSpeed, content);
+	}
+
+	/**
+	 * Constructs a new pager message. The content is transcoded into the POCSAG
+	 * character set, see {@link PocsagCharset}.
+	 * 
+	 * @param timestampNanos Timestamp in nanoseconds since the epoch (used for
+	 *                       message ordering)
+	 * @param priority       Priority (used for message ordering)
+	 * @param address        Destination address
+	 * @param subAddress     Sub-address
+	 * @param type           Content type
+	 * @param sendSpeed      Send speed in bps
+	 * @param content        Message content
+	 * @throws IllegalArgumentException if numeric content contains characters
+	 *                                  outside the numeric character set.
+	 */
+	public PagerMessage(long timestampNanos, Priority priority, int address, SubAddress subAddress, ContentType type,
+			SendSpeed sendSpeed, String content) {
+		this(timestampNanos, priority, address, subAddress, type, sendSpeed, PocsagCharset.encode(content, type));
+	}
+
+	/**
+	 * Constructs a new pager message from content that is already in the POCSAG
+	 * character set, e.g. read back from the journal. The array is not copied.
+	 * 
+	 * @param timestampNanos Timestamp in nanoseconds since the epoch
+	 * @param priority       Priority
+	 * @param address        Destination address
+	 * @param subAddress     Sub-address
+	 * @param type           Content type
+	 * @param sendSpeed      Send speed in bps
+	 * @param content        Transcoded message content
+	 */
+	PagerMessage(long timestampNanos, Priority priority, int address, SubAddress subAddress, ContentType type,
+			SendSpeed sendSpeed, byte[] content) {
+		this.timestamp = timestampNanos;
+		this.header = priority.ordinal() << PRIORITY_SHIFT | subAddress.ordinal() << SUBADDRESS_SHIFT
+				| type.ordinal() << TYPE_SHIFT | sendSpeed.ordinal() << SPEED_SHIFT;
+		this.address = address;
+		this.content = content;
+	}
+
+	/**
+	 * Gets the current time from the cached clock.
+	 * 
+	 * @return Nanoseconds since the epoch
+	 */
+	static long currentTimeNanos() {
+		final long ticks = System.nanoTime();
+		ClockAnchor anchor = clockAnchor;
+		if (ticks - anchor.ticks >= CLOCK_RESYNC_NANOS) {
+			anchor = new ClockAnchor();
+			clockAnchor = anchor;
+		}
+
+		return anchor.epochNanos + (ticks - anchor.ticks);
 	}
 
 	public Instant getTimestamp() {
+		return Instant.ofEpochSecond(0, timestamp);
+	}
+
+	/**
+	 * Gets the timestamp without creating an {@link Instant}.
+	 * 
+	 * @return Milliseconds since the epoch
+	 */
+	public long getTimestampMillis() {
+		return Math.floorDiv(timestamp, NANOS_PER_MILLI);
+	}
+
+	/**
+	 * Gets the timestamp without creating an {@link Instant}.
+	 * 
+	 * @return Nanoseconds since the epoch
+	 */
+	public long getTimestampNanos() {
 		return timestamp;
 	}
 
 	public ContentType getContentType() {
-		return type;
+		return CONTENT_TYPES[(header >>> TYPE_SHIFT) & TYPE_MASK];
 	}
 
 	public Priority getPriority() {
-		return priority;
+		return PRIORITIES[(header >>> PRIORITY_SHIFT) & PRIORITY_MASK];
 	}
 
 	public int getAddress() {
@@ -196,33 +308,86 @@ public class PagerMessage implements Comparable<PagerMessage> {
 	}
 
 	public SubAddress getSubAddress() {
-		return subAddress;
+		return SUBADDRESSES[(header >>> SUBADDRESS_SHIFT) & SUBADDRESS_MASK];
 	}
 
 	public SendSpeed getSendSpeed() {
-		return sendSpeed;
+		return SEND_SPEEDS[(header >>> SPEED_SHIFT) & SPEED_MASK];
 	}
 
+	/**
+	 * Gets the transcoded message content. A new string is created on every call,
+	 * hot paths should use {@link #getContentBytes()} instead.
+	 * 
+	 * @return Message content
+	 */
 	public String getContent() {
+		return new String(content, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Gets the message content in the POCSAG character set. The returned array is
+	 * shared and must not be modified.
+	 * 
+	 * @return Message content
+	 */
+	byte[] getContentBytes() {
 		return content;
 	}
 
-	@Override
-	public int compareTo(PagerMessage o) {
-		if (priority.ordinal() < o.priority.ordinal()) {
-			return -1;
-		} else if (priority.ordinal() > o.priority.ordinal()) {
-			return 1;
+	/**
+	 * Gets the cached encoded frame body, see {@link MessageEncoder}.
+	 * 
+	 * @return Encoded body or {@code null} if not encoded yet
+	 */
+	ByteBuf getEncodedBody() {
+		return encodedBody;
+	}
+
+	/**
+	 * Sets the encoded frame body unless another thread has set it first. The
+	 * message takes ownership of the buffer, a buffer that is not used is
+	 * released.
+	 * 
+	 * @param encodedBody Encoded body
+	 * @return The body in use by this message
+	 */
+	ByteBuf setEncodedBody(ByteBuf encodedBody) {
+		if (ENCODED_BODY.compareAndSet(this, null, encodedBody)) {
+			return encodedBody;
 		}
 
-		// Same Priority, check Timestamp
-		if (timestamp.isBefore(o.timestamp)) {
-			return -1;
-		} else if (timestamp.isAfter(o.timestamp)) {
-			return 1;
-		} else {
-			return 0;
+		encodedBody.release();
+		return this.encodedBody;
+	}
+
+	/**
+	 * Registers a holder of this message, i.e. a transmitter that has queued it or
+	 * a broadcast in progress. The encoded body is kept as long as there are
+	 * holders.
+	 */
+	void addRecipient() {
+		RECIPIENTS.incrementAndGet(this);
+	}
+
+	/**
+	 * Unregisters a holder once it is done with this message. The encoded body is
+	 * released when the last holder is done.
+	 */
+	void removeRecipient() {
+		if (RECIPIENTS.decrementAndGet(this) == 0) {
+			final ByteBuf body = ENCODED_BODY.getAndSet(this, null);
+			if (body != null) {
+				body.release();
+			}
 		}
 	}
 
-}
\ No newline at end of file
+	@Override
+	public int compareTo(PagerMessage o) {
+		// Priority first, same priority is ordered by timestamp
+		final int result = Integer.compare(header & PRIORITY_MASK, o.header & PRIORITY_MASK);
+		return result != 0 ? result : Long.compare(timestamp, o.timestamp);
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.util.Objects;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.ContentType;
+
+/**
+ * Transcodes message content into the 7-bit character set used by POCSAG
+ * pagers. Alphanumeric pagers use the German reference version of ISO 646
+ * (DIN 66003), so umlauts replace the brackets and braces of ASCII. These ASCII
+ * characters are replaced by similar looking characters, control characters
+ * are replaced as well so they cannot break the line based framing. Numeric
+ * pagers only support the BCD character set. Recently encoded contents are
+ * cached so that messages repeated for many transmitters share one array.
+ * 
+ * @author Philipp Thiel
+ */
+public final class PocsagCharset {
+	private static final int CACHE_SIZE = 256;
+	private static final String NUMERIC_CHARS = "0123456789*.U -()[]";
+	private static final CacheEntry[] cache = new CacheEntry[CACHE_SIZE];
+
+	/**
+	 * Immutable cache entry, safe to publish without synchronization.
+	 */
+	private static final class CacheEntry {
+		private final String content;
+		private final ContentType type;
+		private final byte[] encoded;
+
+		CacheEntry(String content, ContentType type, byte[] encoded) {
+			this.content = content;
+			this.type = type;
+			this.encoded = encoded;
+		}
+	}
+
+	private PocsagCharset() {
+	}
+
+	/**
+	 * Encodes the message content. Characters that cannot be represented are
+	 * replaced by {@code '?'}. The returned array may be shared and must not be
+	 * modified.
+	 * 
+	 * @param content Message content
+	 * @param type    Content type
+	 * @return Encoded content
+	 * @throws IllegalArgumentException if numeric content contains characters
+	 *                                  outside the numeric character set.
+	 */
+	public static byte[] encode(String content, ContentType type) {
+		Objects.requireNonNull(content, "Content must not be null.");
+		Objects.requireNonNull(type, "Content type must not be null.");
+
+		if (type == ContentType.NUMERIC && !isNumeric(content)) {
+			throw new IllegalArgumentException("Content contains non-numeric characters.");
+		}
+
+		// Direct mapped, a collision simply replaces the previous entry
+		final int index = content.hashCode() & (CACHE_SIZE - 1);
+		final CacheEntry entry = cache[index];
+		if (entry != null && entry.type == type && entry.content.equals(content)) {
+			return entry.encoded;
+		}
+
+		final byte[] encoded = transcode(content, type);
+		cache[index] = new CacheEntry(content, type, encoded);
+		return encoded;
+	}
+
+	/**
+	 * Checks if the content only consists of characters a numeric pager can
+	 * display.
+	 * 
+	 * @param content Message content
+	 * @return True if the content is valid numeric content
+	 */
+	public static boolean isNumeric(CharSequence content) {
+		for (int i = 0; i < content.length(); ++i) {
+			if (NUMERIC_CHARS.indexOf(content.charAt(i)) < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static byte[] transcode(String content, ContentType type) {
+		final byte[] encoded = new byte[content.length()];
+		for (int i = 0; i < encoded.length; ++i) {
+			// Numeric content has been validated and is sent as is
+			final char c = content.charAt(i);
+			encoded[i] = (byte) (type == ContentType.NUMERIC ? c : transcode(c));
+		}
+
+		return encoded;
+	}
+
+	private static char transcode(char c) {
+		switch (c) {
+		// Displayed as umlauts by DIN 66003 pagers
+		case '[':
+		case '{':
+			return '(';
+		case ']':
+		case '}':
+			return ')';
+		case '\\':
+		case '|':
+			return '/';
+		case '~':
+			return '-';
+		// Control characters would break the framing of the transmitter protocol
+		case '\t':
+		case '\n':
+		case '\r':
+			return ' ';
+		case '\u00c4': // A umlaut
+			return '[';
+		case '\u00d6': // O umlaut
+			return '\\';
+		case '\u00dc': // U umlaut
+			return ']';
+		case '\u00e4': // a umlaut
+			return '{';
+		case '\u00f6': // o umlaut
+			return '|';
+		case '\u00fc': // u umlaut
+			return '}';
+		case '\u00df': // sharp s
+			return '~';
+		default:
+			// Printable ASCII is kept, other control characters and anything outside
+			// the character set is replaced
+			return c >= 0x20 && c < 0x7f ? c : '?';
+		}
+	}
+
+}
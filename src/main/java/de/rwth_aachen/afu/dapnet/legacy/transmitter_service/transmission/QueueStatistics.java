@@ -0,0 +1,137 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.Priority;
+
+/**
+ * Per-priority counters of messages that have been dropped from a transmitter
+ * message queue. Safe to update and read from any thread.
+ * 
+ * @author Philipp Thiel
+ */
+public final class QueueStatistics {
+
+	private static final Priority[] PRIORITIES = Priority.values();
+	private final AtomicLongArray evicted = new AtomicLongArray(PRIORITIES.length);
+	private final AtomicLongArray rejected = new AtomicLongArray(PRIORITIES.length);
+	private final AtomicLongArray expired = new AtomicLongArray(PRIORITIES.length);
+	private final AtomicLongArray duplicates = new AtomicLongArray(PRIORITIES.length);
+
+	/**
+	 * Records a queued message that has been evicted to make room.
+	 * 
+	 * @param priority Message priority
+	 */
+	void recordEvicted(Priority priority) {
+		evicted.incrementAndGet(priority.ordinal());
+	}
+
+	/**
+	 * Records a new message that has been rejected because the queue was full.
+	 * 
+	 * @param priority Message priority
+	 */
+	void recordRejected(Priority priority) {
+		rejected.incrementAndGet(priority.ordinal());
+	}
+
+	/**
+	 * Records a queued message that has expired before it could be sent.
+	 * 
+	 * @param priority Message priority
+	 */
+	void recordExpired(Priority priority) {
+		expired.incrementAndGet(priority.ordinal());
+	}
+
+	/**
+	 * Records a new message that has been suppressed as a duplicate.
+	 * 
+	 * @param priority Message priority
+	 */
+	void recordDuplicate(Priority priority) {
+		duplicates.incrementAndGet(priority.ordinal());
+	}
+
+	/**
+	 * Gets the number of evicted messages of the given priority.
+	 * 
+	 * @param priority Message priority
+	 * @return Number of evicted messages
+	 */
+	public long getEvictedCount(Priority priority) {
+		return evicted.get(priority.ordinal());
+	}
+
+	/**
+	 * Gets the number of rejected messages of the given priority.
+	 * 
+	 * @param priority Message priority
+	 * @return Number of rejected messages
+	 */
+	public long getRejectedCount(Priority priority) {
+		return rejected.get(priority.ordinal());
+	}
+
+	/**
+	 * Gets the number of expired messages of the given priority.
+	 * 
+	 * @param priority Message priority
+	 * @return Number of expired messages
+	 */
+	public long getExpiredCount(Priority priority) {
+		return expired.get(priority.ordinal());
+	}
+
+	/**
+	 * Gets the number of suppressed duplicates of the given priority.
+	 * 
+	 * @param priority Message priority
+	 * @return Number of suppressed duplicates
+	 */
+	public long getDuplicateCount(Priority priority) {
+		return duplicates.get(priority.ordinal());
+	}
+
+	@Override
+	public String toString() {
+		return "evicted " + format(evicted) + ", rejected " + format(rejected) + ", expired " + format(expired)
+				+ ", duplicates " + format(duplicates);
+	}
+
+	private static String format(AtomicLongArray counters) {
+		StringBuilder sb = new StringBuilder("[");
+		for (Priority p : PRIORITIES) {
+			long count = counters.get(p.ordinal());
+			if (count > 0) {
+				if (sb.length() > 1) {
+					sb.append(' ');
+				}
+
+				sb.append(p).append('=').append(count);
+			}
+		}
+
+		return sb.append(']').toString();
+	}
+
+}
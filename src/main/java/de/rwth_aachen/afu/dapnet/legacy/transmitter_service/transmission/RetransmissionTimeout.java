@@ -0,0 +1,107 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+/**
+ * Adaptive retransmission timeout for message acks. The timeout is derived
+ * from a smoothed round trip time and its variation (RFC 6298), it is seeded
+ * with the round trip time measured during the handshake and updated with
+ * observed ack latencies. Not thread-safe.
+ * 
+ * @author Philipp Thiel
+ */
+final class RetransmissionTimeout {
+
+	/**
+	 * Clock granularity in milliseconds, the sync loops measure in 100 ms steps.
+	 */
+	private static final long GRANULARITY_MILLIS = 100;
+	private final long minTimeout;
+	private final long maxTimeout;
+	private long smoothedRtt = -1;
+	private long rttVariation;
+	private long timeout;
+
+	/**
+	 * Creates a new retransmission timeout.
+	 * 
+	 * @param minTimeout Minimum timeout in milliseconds
+	 * @param maxTimeout Maximum timeout in milliseconds
+	 * @param initialRtt Round trip time measured during the handshake in
+	 *                   milliseconds or a negative value if unknown
+	 */
+	public RetransmissionTimeout(long minTimeout, long maxTimeout, long initialRtt) {
+		this.minTimeout = Math.max(1, minTimeout);
+		this.maxTimeout = Math.max(this.minTimeout, maxTimeout);
+		// Conservative start value until a round trip time is known
+		this.timeout = clamp(1000);
+
+		if (initialRtt >= 0) {
+			addSample(initialRtt);
+		}
+	}
+
+	/**
+	 * Adds a round trip time sample. Samples of retransmitted messages must not be
+	 * used as their ack cannot be assigned to a transmission.
+	 * 
+	 * @param rtt Round trip time in milliseconds
+	 */
+	public void addSample(long rtt) {
+		if (smoothedRtt < 0) {
+			smoothedRtt = rtt;
+			rttVariation = rtt / 2;
+		} else {
+			rttVariation = (3 * rttVariation + Math.abs(smoothedRtt - rtt)) / 4;
+			smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+		}
+
+		timeout = clamp(smoothedRtt + Math.max(GRANULARITY_MILLIS, 4 * rttVariation));
+	}
+
+	/**
+	 * Doubles the timeout after it has expired.
+	 */
+	public void backoff() {
+		timeout = clamp(timeout * 2);
+	}
+
+	/**
+	 * Gets the current timeout.
+	 * 
+	 * @return Timeout in milliseconds
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Gets the smoothed round trip time.
+	 * 
+	 * @return Smoothed round trip time in milliseconds or -1 if unknown
+	 */
+	public long getSmoothedRtt() {
+		return smoothedRtt;
+	}
+
+	private long clamp(long value) {
+		return Math.max(minTimeout, Math.min(value, maxTimeout));
+	}
+
+}
@@ -20,6 +20,7 @@ package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
 
 import java.net.InetSocketAddress;
 import java.util.Objects;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -30,25 +31,24 @@ import org.apache.logging.log4j.Logger;
 import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend.ServiceError;
 import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend.ServiceResult;
 import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend.TransmitterBootstrapService;
-import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend.TransmitterHeartbeatService;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.ServiceConfiguration;
 import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.Transmitter.Status;
-import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.TransmitterClient.AckType;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.concurrent.ScheduledFuture;
 
-class ServerHandler extends SimpleChannelInboundHandler<String> {
+class ServerHandler extends SimpleChannelInboundHandler<Object> {
 
 	private enum ConnectionState {
-		AUTH_PENDING, SYNC_TIME, TIMESLOTS_SENT, ONLINE, OFFLINE, EXCEPTION_CAUGHT
+		QUEUED, AUTH_PENDING, BOOTSTRAP_PENDING, SYNC_TIME, TIMESLOTS_SENT, ONLINE, OFFLINE, EXCEPTION_CAUGHT
 	}
 
 	private static final Logger logger = LogManager.getLogger();
-	// Ack message #04 +
-	private static final Pattern ACK_PATTERN = Pattern.compile("#(\\p{XDigit}{2}) ([-%\\+])");
 	// Welcome string [RasPager v1.0-SCP-#2345678 abcde]
 	private static final Pattern AUTH_PATTERN = Pattern
 			.compile("\\[([/\\-\\p{Alnum}]+) v(\\d[\\d\\.]+[\\p{Graph}]*) ([\\p{Alnum}_]+) (\\p{Alnum}+)\\]");
@@ -59,17 +59,45 @@ class ServerHandler extends SimpleChannelInboundHandler<String> {
 	private TransmitterClient client;
 	private ChannelPromise handshakePromise;
 	private SyncTimeHandler syncHandler;
+	private long handshakeRtt = -1;
+	private HeartbeatScheduler.Registration heartbeat;
+	private HandshakeAdmission.Ticket admissionTicket;
+	private ScheduledFuture<?> queueTimeout;
+	private SyncTimeHandler resyncHandler;
+	private ScheduledFuture<?> resyncTask;
+	private boolean probePending;
 
 	public ServerHandler(TransmitterManager manager) {
 		this.manager = Objects.requireNonNull(manager, "Transmitter manager must not be null.");
 	}
 
 	@Override
-	protected void channelRead0(ChannelHandlerContext ctx, String msg) throws Exception {
+	protected void channelRead0(ChannelHandlerContext ctx, Object msg) throws Exception {
+		// Any data proves that the connection is alive
+		probePending = false;
+
+		if (msg instanceof MessageAck) {
+			if (state == ConnectionState.ONLINE) {
+				handleMessageAck((MessageAck) msg);
+				heartbeat.markSeen();
+				return;
+			}
+
+			// Acks are not expected during the handshake, handle them like any other line
+			msg = msg.toString();
+		}
+
+		handleLine(ctx, (String) msg);
+	}
+
+	private void handleLine(ChannelHandlerContext ctx, String msg) throws Exception {
 		switch (state) {
 		case AUTH_PENDING:
 			handleAuth(ctx, msg);
 			break;
+		case BOOTSTRAP_PENDING:
+			// Reading is suspended, but lines may already have been decoded
+			throw new TransmitterException("Unexpected message during bootstrap: " + msg);
 		case SYNC_TIME:
 			handleSyncTime(ctx, msg);
 			break;
@@ -77,9 +105,13 @@ class ServerHandler extends SimpleChannelInboundHandler<String> {
 			handleTimeslotsAck(ctx, msg);
 			break;
 		case ONLINE:
-			handleMessageAck(msg);
-			sendHearbeat(ctx);
-			break;
+			if (resyncHandler != null) {
+				handleResync(ctx, msg);
+				break;
+			}
+
+			// Only acks are expected once online, these are decoded by the line decoder
+			throw new TransmitterException("Invalid response received: " + msg);
 		default:
 			logger.fatal("Invalid state.");
 			ctx.close();
@@ -91,15 +123,64 @@ class ServerHandler extends SimpleChannelInboundHandler<String> {
 	public void channelActive(ChannelHandlerContext ctx) throws Exception {
 		logger.info("Accepted new connection from {}", ctx.channel().remoteAddress());
 
+		admissionTicket = manager.getHandshakeAdmission().requestPermit(ctx.executor(),
+				() -> onHandshakeAdmitted(ctx));
+		if (admissionTicket.isAdmitted()) {
+			beginHandshake(ctx);
+		} else if (admissionTicket.isRejected()) {
+			logger.warn("Too many pending handshakes, rejecting connection from {}.", ctx.channel().remoteAddress());
+			ctx.close();
+		} else {
+			// Do not read from the connection until a permit is granted
+			logger.debug("Handshake for {} queued.", ctx.channel().remoteAddress());
+			state = ConnectionState.QUEUED;
+			ctx.channel().config().setAutoRead(false);
+
+			queueTimeout = ctx.executor().schedule(() -> {
+				if (state == ConnectionState.QUEUED) {
+					logger.warn("Timed out waiting for handshake admission.");
+					ctx.close();
+				}
+			}, HANDSHAKE_TIMEOUT_SEC, TimeUnit.SECONDS);
+		}
+	}
+
+	private void onHandshakeAdmitted(ChannelHandlerContext ctx) {
+		if (queueTimeout != null) {
+			queueTimeout.cancel(false);
+			queueTimeout = null;
+		}
+
+		if (client != null) {
+			// Admitted while the permit was requested, the handshake has already been
+			// started by channelActive and holds the permit
+			return;
+		}
+
+		if (state != ConnectionState.QUEUED || !ctx.channel().isActive()) {
+			admissionTicket.release();
+			return;
+		}
+
+		ctx.channel().config().setAutoRead(true);
+		beginHandshake(ctx);
+	}
+
+	private void beginHandshake(ChannelHandlerContext ctx) {
 		// Do not add the client to the transmitter manager yet. This is done
 		// once the handshake is finished.
-		client = new TransmitterClient(ctx.channel());
+		client = new TransmitterClient(ctx.channel(), manager.getConfiguration());
+		client.enableExpirySweep(manager.getExpiryTimer());
 
-		syncHandler = new SyncTimeHandler(manager.getConfiguration().getNumberOfSyncLoops());
+		syncHandler = createSyncHandler(client.getStatistics());
 
 		handshakePromise = ctx.newPromise();
 		initHandshakeTimeout(ctx);
 
+		// The permit is returned once the handshake is done, regardless of the result
+		final HandshakeAdmission.Ticket ticket = admissionTicket;
+		handshakePromise.addListener(f -> ticket.release());
+
 		state = ConnectionState.AUTH_PENDING;
 	}
 
@@ -109,6 +190,8 @@ class ServerHandler extends SimpleChannelInboundHandler<String> {
 			logger.info("Connection to {} with callsign {} closed in state {} using {} {}.",
 					ctx.channel().remoteAddress(), client.getName(), state, client.getDeviceType(),
 					client.getDeviceVersion());
+			logger.info("Link statistics of {}: {}", client.getName(), client.getStatistics());
+			logger.info("Queue statistics of {}: {}", client.getName(), client.getQueueStatistics());
 		} else {
 			logger.info("Connection to {} closed in state {}.", ctx.channel().remoteAddress(), state);
 		}
@@ -117,18 +200,50 @@ class ServerHandler extends SimpleChannelInboundHandler<String> {
 			handshakePromise.trySuccess();
 		}
 
+		if (admissionTicket != null) {
+			admissionTicket.cancel();
+			admissionTicket.release();
+		}
+
+		if (heartbeat != null) {
+			heartbeat.cancel();
+			heartbeat = null;
+		}
+
+		if (resyncTask != null) {
+			resyncTask.cancel(false);
+			resyncTask = null;
+		}
+
 		if (client != null) {
+			// Pending messages of a session that has been taken over are moved to its
+			// successor, a disconnected session is parked for the grace period. Whatever
+			// is left here is lost unless it has been journaled.
+			manager.onDisconnect(client);
+
 			int count = client.getPendingMessageCount();
-			if (count > 0) {
+			if (count > 0 && client.isParked()) {
+				logger.info("Client {} has {} pending messages, kept for the grace period.", client.getName(),
+						count);
+			} else if (count > 0 && client.getJournal() != null) {
+				logger.info("Client {} has {} pending messages, kept in the journal.", client.getName(), count);
+			} else if (count > 0) {
 				logger.warn("Client {} has {} pending messages.", client.getName(), count);
 			}
-
-			manager.onDisconnect(client);
 		}
 
 		state = ConnectionState.OFFLINE;
 	}
 
+	@Override
+	public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+		if (evt instanceof IdleStateEvent) {
+			handleIdle(ctx, (IdleStateEvent) evt);
+		} else {
+			super.userEventTriggered(ctx, evt);
+		}
+	}
+
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
 		state = ConnectionState.EXCEPTION_CAUGHT;
@@ -165,108 +280,87 @@ class ServerHandler extends SimpleChannelInboundHandler<String> {
 		}
 	}
 
-	private void handleMessageAck(String msg) throws Exception {
-		Matcher ackMatcher = ACK_PATTERN.matcher(msg);
-		if (!ackMatcher.matches()) {
-			throw new TransmitterException("Invalid response received: " + msg);
-		}
-
-		int seq = Integer.parseInt(ackMatcher.group(1), 16);
-		AckType type = AckType.ERROR;
-		switch (ackMatcher.group(2)) {
-		case "+":
-			type = AckType.OK;
-			break;
-		case "%":
-			type = AckType.RETRY;
-			break;
-		case "-":
-			type = AckType.ERROR;
-		}
-
-		if (!client.ackMessage(seq, type)) {
+	private void handleMessageAck(MessageAck ack) {
+		if (!client.ackMessage(ack.getSequenceNumber(), ack.getType())) {
 			Transmitter t = client.getTransmitter();
 			if (t != null) {
-				logger.warn("Invalid ack received from {}: {}", t.getName(), msg);
+				logger.warn("Invalid ack received from {}: {}", t.getName(), ack);
 			} else {
-				logger.warn("Invalid ack received: {}", msg);
+				logger.warn("Invalid ack received: {}", ack);
 			}
 		}
 	}
 
-	/**
-	 * Sends the transmitter heartbeat.
-	 * 
-	 * @param ctx Channel handler context
-	 */
-	private void sendHearbeat(ChannelHandlerContext ctx) {
-		final Transmitter t = client.getTransmitter();
-		if (t == null) {
-			// This should not happen at this stage...
-			logger.warn("Could not send heartbeat, transmitter is null.");
+	private void handleAuth(ChannelHandlerContext ctx, String msg) throws Exception {
+		Matcher authMatcher = AUTH_PATTERN.matcher(msg);
+		if (!authMatcher.matches()) {
+			logger.error("Invalid welcome message format: " + msg);
+			SendAndCloseTask task = new SendAndCloseTask(ctx.channel(), "7 Invalid welcome message format");
+			ctx.executor().schedule(task, CLOSE_TASK_DELAY_SEC, TimeUnit.SECONDS);
 			return;
 		}
 
-		logger.debug("Sending heartbeat for transmitter '{}'", t.getName());
+		final String type = authMatcher.group(1);
+		final String version = authMatcher.group(2);
+		final String name = authMatcher.group(3);
+		final String key = authMatcher.group(4);
 
-		final TransmitterHeartbeatService service = manager.getHearbeatService();
+		final TransmitterBootstrapService service = manager.getBootstrapService();
 		if (service == null) {
-			logger.debug("No heartbeat service, skipping.");
+			logger.error("Bootstrap service is null.");
 			return;
 		}
 
-		Runnable heartbeat = () -> {
+		// Park the connection until the bootstrap response has arrived. The response
+		// is handled on the event loop of this channel.
+		state = ConnectionState.BOOTSTRAP_PENDING;
+		ctx.channel().config().setAutoRead(false);
+
+		service.postBootstrapRequest(name, key, type, version).whenCompleteAsync((result, cause) -> {
 			try {
-				service.postHeartbeat(t.getName(), t.getAuthKey(), true);
+				handleBootstrapResult(ctx, msg, name, key, type, version, result, cause);
 			} catch (Exception ex) {
-				logger.error("Failed to send transmitter heartbeat.", ex);
+				ctx.pipeline().fireExceptionCaught(ex);
 			}
-		};
-
-		ctx.executor().execute(heartbeat);
+		}, ctx.executor());
 	}
 
-	private void handleAuth(ChannelHandlerContext ctx, String msg) throws Exception {
-		Matcher authMatcher = AUTH_PATTERN.matcher(msg);
-		if (!authMatcher.matches()) {
-			logger.error("Invalid welcome message format: " + msg);
-			SendAndCloseTask task = new SendAndCloseTask(ctx.channel(), "7 Invalid welcome message format");
-			ctx.executor().schedule(task, CLOSE_TASK_DELAY_SEC, TimeUnit.SECONDS);
+	private void handleBootstrapResult(ChannelHandlerContext ctx, String welcomeMsg, String callSign, String authKey,
+			String type, String version, ServiceResult<String> result, Throwable cause) throws Exception {
+		if (state != ConnectionState.BOOTSTRAP_PENDING || !ctx.channel().isActive()) {
+			// Connection has been closed while waiting for the response
+			logger.debug("Discarding bootstrap result for '{}', connection is gone.", callSign);
 			return;
 		}
 
-		String type = authMatcher.group(1);
-		String version = authMatcher.group(2);
-		String name = authMatcher.group(3);
-		String key = authMatcher.group(4);
+		if (cause != null) {
+			ctx.pipeline().fireExceptionCaught(cause instanceof CompletionException ? cause.getCause() : cause);
+			return;
+		}
 
-		final Transmitter transmitter = bootstrapTransmitter(ctx, name, key, type, version);
+		final Transmitter transmitter = bootstrapTransmitter(ctx, callSign, authKey, type, version, result);
 		if (transmitter == null) {
 			// Logging and sending the response is done by the bootstrap handler
 			return;
 		}
 
-		// Close existing connection if necessary. This is a no-op if the transmitter is
-		// not connected.
-		manager.disconnectFrom(transmitter);
-
 		client.setTransmitter(transmitter);
+		client.setWindowSize(manager.getConfiguration().getTransmitWindowSize(type, version));
+		client.setJournal(manager.getJournal(transmitter.getNormalizedName()));
+
+		// Take over and close an existing connection without blocking the event loop.
+		// This is a no-op if the transmitter is not connected.
+		manager.takeOver(client);
 
 		// Begin the sync time procedure
-		syncHandler.handleMessage(ctx, msg);
+		syncHandler.handleMessage(ctx, welcomeMsg);
 
 		state = ConnectionState.SYNC_TIME;
+		ctx.channel().config().setAutoRead(true);
 	}
 
 	private Transmitter bootstrapTransmitter(ChannelHandlerContext ctx, String callSign, String authKey, String type,
-			String version) {
-		final TransmitterBootstrapService service = manager.getBootstrapService();
-		if (service == null) {
-			logger.error("Bootstrap service is null.");
-			return null;
-		}
-
-		ServiceResult<String> result = service.postBootstrapRequest(callSign, authKey, type, version);
+			String version, ServiceResult<String> result) {
 		if (result.isOk()) {
 			Transmitter t = new Transmitter();
 			t.setName(callSign);
@@ -312,6 +406,7 @@ class ServerHandler extends SimpleChannelInboundHandler<String> {
 		syncHandler.handleMessage(ctx, message);
 
 		if (syncHandler.isDone()) {
+			handshakeRtt = syncHandler.getRoundTripTime();
 			syncHandler = null;
 
 			// Send timeslots to client
@@ -337,10 +432,81 @@ class ServerHandler extends SimpleChannelInboundHandler<String> {
 		handshakePromise.trySuccess();
 		handshakePromise = null;
 
+		final ServiceConfiguration config = manager.getConfiguration();
+		if (config.getMaxAckTimeout() > 0) {
+			client.enableAckTimeout(manager.getAckTimer(), new RetransmissionTimeout(config.getMinAckTimeout(),
+					config.getMaxAckTimeout(), handshakeRtt));
+		}
+
 		// Now it is time to inform the transmitter manager of the new client
 		manager.onConnect(client);
 
+		// Heartbeats are sent periodically as long as the transmitter is active
+		heartbeat = manager.getHeartbeatScheduler().register(client.getTransmitter());
+
 		state = ConnectionState.ONLINE;
+
+		final int resyncInterval = config.getResyncInterval();
+		if (resyncInterval > 0) {
+			resyncTask = ctx.executor().scheduleAtFixedRate(() -> {
+				if (state == ConnectionState.ONLINE && resyncHandler == null) {
+					startResync(ctx, createSyncHandler(null));
+				}
+			}, resyncInterval, resyncInterval, TimeUnit.SECONDS);
+		}
+	}
+
+	private void handleIdle(ChannelHandlerContext ctx, IdleStateEvent evt) {
+		if (state != ConnectionState.ONLINE) {
+			// The handshake has its own timeout
+			return;
+		}
+
+		if (evt.state() == IdleState.READER_IDLE) {
+			if (probePending) {
+				logger.warn("No response from {} to idle probe, closing connection.", client.getName());
+				ctx.close();
+				return;
+			}
+
+			probePending = true;
+		}
+
+		// A sync request without time adjustment serves as probe, an ongoing resync
+		// does as well
+		if (resyncHandler == null) {
+			startResync(ctx, SyncTimeHandler.createProbe());
+		}
+	}
+
+	private void startResync(ChannelHandlerContext ctx, SyncTimeHandler handler) {
+		resyncHandler = handler;
+		try {
+			// Sends the first sync request
+			resyncHandler.handleMessage(ctx, null);
+		} catch (Exception ex) {
+			ctx.pipeline().fireExceptionCaught(ex);
+		}
+	}
+
+	private void handleResync(ChannelHandlerContext ctx, String msg) throws Exception {
+		resyncHandler.handleMessage(ctx, msg);
+		heartbeat.markSeen();
+
+		if (resyncHandler.isDone()) {
+			logger.debug("Time resync of {} done after {} loops.", client.getName(), resyncHandler.getLoopCount());
+			resyncHandler = null;
+		}
+	}
+
+	private SyncTimeHandler createSyncHandler(LinkStatistics statistics) {
+		final ServiceConfiguration config = manager.getConfiguration();
+		if (config.isAdaptiveSync()) {
+			return new SyncTimeHandler(config.getMinSyncLoops(), config.getMaxSyncLoops(), config.getSyncTolerance(),
+					statistics);
+		} else {
+			return new SyncTimeHandler(config.getNumberOfSyncLoops(), statistics);
+		}
 	}
 
 	private void initHandshakeTimeout(final ChannelHandlerContext ctx) {
@@ -20,14 +20,14 @@ package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.ServiceConfiguration;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.DelimiterBasedFrameDecoder;
-import io.netty.handler.codec.Delimiters;
-import io.netty.handler.codec.string.StringDecoder;
 import io.netty.handler.codec.string.StringEncoder;
+import io.netty.handler.timeout.IdleStateHandler;
 
 /**
  * The server initializer initializes the newly created channel pipeline.
@@ -36,7 +36,7 @@ import io.netty.handler.codec.string.StringEncoder;
  */
 class ServerInitializer extends ChannelInitializer<SocketChannel> {
 	private static final StringEncoder encoder = new StringEncoder(StandardCharsets.US_ASCII);
-	private static final StringDecoder decoder = new StringDecoder(StandardCharsets.US_ASCII);
+	private static final int MAX_LINE_LENGTH = 2048;
 	private final MessageEncoder msgEncoder = new MessageEncoder();
 	private final TransmitterManager manager;
 
@@ -46,9 +46,22 @@ class ServerInitializer extends ChannelInitializer<SocketChannel> {
 
 	@Override
 	protected void initChannel(SocketChannel ch) throws Exception {
+		// Reject connections exceeding the rate limit before allocating anything
+		final HandshakeAdmission admission = manager.getHandshakeAdmission();
+		if (!admission.allowConnection(ch.remoteAddress().getAddress())) {
+			ch.close();
+			return;
+		}
+
+		final ServiceConfiguration config = manager.getConfiguration();
 		ChannelPipeline p = ch.pipeline();
-		p.addLast(new DelimiterBasedFrameDecoder(2048, Delimiters.lineDelimiter()));
-		p.addLast(decoder);
+		p.addLast(new HandshakeFilter(admission, config.getMaxWelcomeLength()));
+		if (config.getReaderIdleTimeout() > 0 || config.getWriterIdleTimeout() > 0) {
+			p.addLast(new IdleStateHandler(config.getReaderIdleTimeout(), config.getWriterIdleTimeout(), 0,
+					TimeUnit.SECONDS));
+		}
+
+		p.addLast(new LineDecoder(MAX_LINE_LENGTH));
 		p.addLast(encoder);
 		p.addLast(msgEncoder);
 		p.addLast(new ServerHandler(manager));
@@ -0,0 +1,43 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.util.Queue;
+
+/**
+ * Sends messages strictly by priority, messages of the same priority are sent
+ * in the order they have been queued. Lower priorities wait until all higher
+ * priority messages have been sent.
+ * 
+ * @author Philipp Thiel
+ */
+final class StrictScheduler implements MessageScheduler {
+
+	@Override
+	public int select(Queue<PagerMessage>[] queues, long nowMillis) {
+		for (int i = 0; i < queues.length; ++i) {
+			if (!queues[i].isEmpty()) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+}
@@ -18,6 +18,7 @@
 
 package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
 
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,7 +26,10 @@ import io.netty.channel.ChannelHandlerContext;
 
 /**
  * This class implements a simple state machine to handle the initial time
- * synchronization between a client and the server.
+ * synchronization between a client and the server. Round trip times are
+ * measured with a monotonic clock. In adaptive mode the sync loops stop as soon
+ * as the minimum round trip time has converged, links with high jitter get
+ * more loops.
  * 
  * @author Philipp Thiel
  */
@@ -37,23 +41,64 @@ final class SyncTimeHandler {
 
 	// 2:13d3:0026
 	private static final Pattern syncAckPattern = Pattern.compile("(\\d):(\\w+):(\\w+)");
+	private final int minLoops;
 	private final int maxLoops;
+	private final long toleranceNanos;
+	private final boolean probe;
+	private final LinkStatistics statistics;
 	private SyncState state = SyncState.WRITE_TIME;
 	private int loopCounter = 0;
+	private int stableLoops = 0;
 	private long timeTx = 0;
-	private long timeRx = 0;
+	private long timeTxMillis = 0;
+	private long timeTxNanos = 0;
+	private long timeRxNanos = 0;
 	private long minRTT = Long.MAX_VALUE;
+	private long maxRTT = 0;
 	private long timeAdjust = 0;
 	private String timeTxMsg;
 	private String timeRxMsg;
 
 	/**
-	 * Creates a new instance.
+	 * Creates a new instance performing a fixed number of sync loops.
 	 * 
-	 * @param maxLoops Number of time synchronizations to perform.
+	 * @param maxLoops   Number of time synchronizations to perform.
+	 * @param statistics Link statistics to record the round trip times in.
 	 */
-	public SyncTimeHandler(int maxLoops) {
-		this.maxLoops = maxLoops;
+	public SyncTimeHandler(int maxLoops, LinkStatistics statistics) {
+		this(maxLoops, maxLoops, 0, statistics);
+	}
+
+	/**
+	 * Creates a new instance performing an adaptive number of sync loops.
+	 * 
+	 * @param minLoops        Minimum number of time synchronizations to perform.
+	 * @param maxLoops        Maximum number of time synchronizations to perform.
+	 * @param toleranceMillis Round trip time variation considered stable.
+	 * @param statistics      Link statistics to record the round trip times in.
+	 */
+	public SyncTimeHandler(int minLoops, int maxLoops, long toleranceMillis, LinkStatistics statistics) {
+		this(minLoops, maxLoops, toleranceMillis, statistics, false);
+	}
+
+	private SyncTimeHandler(int minLoops, int maxLoops, long toleranceMillis, LinkStatistics statistics,
+			boolean probe) {
+		this.maxLoops = Math.max(1, maxLoops);
+		this.minLoops = Math.max(1, Math.min(minLoops, this.maxLoops));
+		this.toleranceNanos = TimeUnit.MILLISECONDS.toNanos(toleranceMillis);
+		this.statistics = statistics;
+		this.probe = probe;
+	}
+
+	/**
+	 * Creates a new instance that only checks if the client is alive. It sends a
+	 * single sync request and is done once the response has been acked, the time
+	 * of the client is not adjusted.
+	 * 
+	 * @return Sync handler used as liveness probe
+	 */
+	public static SyncTimeHandler createProbe() {
+		return new SyncTimeHandler(1, 1, 0, null, true);
 	}
 
 	/**
@@ -95,28 +140,41 @@ final class SyncTimeHandler {
 		return state == SyncState.DONE;
 	}
 
+	/**
+	 * Gets the number of sync loops performed.
+	 * 
+	 * @return Number of sync loops
+	 */
+	public int getLoopCount() {
+		return loopCounter;
+	}
+
+	/**
+	 * Gets the smallest round trip time measured during the sync loops.
+	 * 
+	 * @return Round trip time in milliseconds or -1 if not measured yet.
+	 */
+	public long getRoundTripTime() {
+		return minRTT != Long.MAX_VALUE ? TimeUnit.NANOSECONDS.toMillis(minRTT) : -1;
+	}
+
 	private void writeTime(ChannelHandlerContext ctx) {
-		long timemillis = System.currentTimeMillis();
-		long seconds = timemillis / 1000;
-		// Milliseconds as long of current second
-		long deltaTimemillis = timemillis - seconds * 1000;
 		// Time since last full minute in 0,1 s, lowest 16 bit
 		// after 1 complete minute, counter will continue with 601, 602,...
 		// up to 0xffff, than wrap to 0x0000
-		timeTx = (seconds * 10 + deltaTimemillis / 100) & 0xffff;
+		timeTxMillis = System.currentTimeMillis();
+		timeTx = toSyncTime(timeTxMillis);
 
-		timeTxMsg = String.format("%04X", timeTx);
-		String resp = String.format("%d:%s\n", MessageEncoder.MT_SYNCREQUEST, timeTxMsg);
+		timeTxMsg = toHex(timeTx, 4);
+		String resp = MessageEncoder.MT_SYNCREQUEST + ":" + timeTxMsg + "\n";
+		timeTxNanos = System.nanoTime();
 		ctx.writeAndFlush(resp);
 
 		state = SyncState.READ_TIME;
 	}
 
 	private void readTime(String message) {
-		long timemillis = System.currentTimeMillis();
-		long seconds = timemillis / 1000;
-		long deltaTimemillis = timemillis - seconds * 1000;
-		timeRx = (seconds * 10 + deltaTimemillis / 100) & 0xffff;
+		timeRxNanos = System.nanoTime();
 
 		// Actual message processing is done during readTimeAck()
 		timeRxMsg = message;
@@ -143,18 +201,51 @@ final class SyncTimeHandler {
 			throw new TransmitterException("Wrong sync response received.");
 		}
 
-		long rtt = timeRx - timeTx;
+		long rtt = timeRxNanos - timeTxNanos;
+		if (statistics != null) {
+			statistics.recordHandshakeRtt(rtt);
+		}
+
+		if (probe) {
+			// A single sample is too noisy to adjust the time, the response is enough
+			++loopCounter;
+			state = SyncState.DONE;
+			return;
+		}
+
+		if (minRTT - rtt > toleranceNanos) {
+			stableLoops = 0;
+		} else {
+			++stableLoops;
+		}
+
 		if (rtt < minRTT) {
 			minRTT = rtt;
-			timeAdjust = (timeTx + rtt / 2) - timeLongClient;
+			// The client time is assumed to be taken half way through the round trip
+			long timeMid = toSyncTime(timeTxMillis + TimeUnit.NANOSECONDS.toMillis(rtt / 2));
+			timeAdjust = timeMid - timeLongClient;
 		}
 
+		maxRTT = Math.max(maxRTT, rtt);
+
 		++loopCounter;
-		if (loopCounter < maxLoops) {
-			writeTime(ctx);
-		} else {
+		if (isConverged()) {
 			sendTimeAdjust(ctx);
+		} else {
+			writeTime(ctx);
+		}
+	}
+
+	private boolean isConverged() {
+		if (loopCounter >= maxLoops) {
+			return true;
+		} else if (loopCounter < minLoops) {
+			return false;
 		}
+
+		// A jittery link needs more loops without improvement to trust the minimum
+		int requiredStableLoops = (maxRTT - minRTT) <= toleranceNanos ? 1 : 3;
+		return stableLoops >= requiredStableLoops;
 	}
 
 	private void sendTimeAdjust(ChannelHandlerContext ctx) throws Exception {
@@ -168,9 +259,24 @@ final class SyncTimeHandler {
 			sign = "-";
 		}
 
-		String msg = String.format("%d:%s%04X\n", MessageEncoder.MT_SYNCORDER, sign, abs);
+		String msg = MessageEncoder.MT_SYNCORDER + ":" + sign + toHex(abs, 4) + "\n";
 		ctx.writeAndFlush(msg);
 
 		state = SyncState.READ_TIME_ADJUST_ACK;
 	}
+
+	private static long toSyncTime(long timeMillis) {
+		return (timeMillis / 100) & 0xffff;
+	}
+
+	private static String toHex(long value, int minDigits) {
+		int digits = Math.max(minDigits, (67 - Long.numberOfLeadingZeros(value)) / 4);
+		char[] buf = new char[digits];
+		for (int i = digits - 1; i >= 0; --i) {
+			buf[i] = (char) MessageEncoder.HEX_DIGITS[(int) (value & 0xF)];
+			value >>>= 4;
+		}
+
+		return new String(buf);
+	}
 }
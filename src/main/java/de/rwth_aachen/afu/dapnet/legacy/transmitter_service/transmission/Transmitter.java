@@ -40,6 +40,8 @@ public class Transmitter implements NamedObject {
 	private Instant lastUpdate;
 	private Instant lastConnected;
 	private Instant connectedSince;
+	private volatile LinkStatistics linkStatistics;
+	private volatile QueueStatistics queueStatistics;
 
 	public Transmitter() {
 	}
@@ -67,6 +69,8 @@ public class Transmitter implements NamedObject {
 		lastUpdate = other.lastUpdate;
 		lastConnected = other.lastConnected;
 		connectedSince = other.connectedSince;
+		linkStatistics = other.linkStatistics;
+		queueStatistics = other.queueStatistics;
 	}
 
 	@Override
@@ -225,6 +229,42 @@ public class Transmitter implements NamedObject {
 		messageCount.addAndGet(delta);
 	}
 
+	/**
+	 * Gets the link statistics of the current or last session.
+	 * 
+	 * @return Link statistics or {@code null} if never connected
+	 */
+	public LinkStatistics getLinkStatistics() {
+		return linkStatistics;
+	}
+
+	/**
+	 * Sets the link statistics of the current session.
+	 * 
+	 * @param linkStatistics Link statistics
+	 */
+	public void setLinkStatistics(LinkStatistics linkStatistics) {
+		this.linkStatistics = linkStatistics;
+	}
+
+	/**
+	 * Gets the message queue statistics of the current or last session.
+	 * 
+	 * @return Queue statistics or {@code null} if never connected
+	 */
+	public QueueStatistics getQueueStatistics() {
+		return queueStatistics;
+	}
+
+	/**
+	 * Sets the message queue statistics of the current session.
+	 * 
+	 * @param queueStatistics Queue statistics
+	 */
+	public void setQueueStatistics(QueueStatistics queueStatistics) {
+		this.queueStatistics = queueStatistics;
+	}
+
 	@Override
 	public String toString() {
 		return String.format("Transmitter{name='%s', status=%s}", name, status);
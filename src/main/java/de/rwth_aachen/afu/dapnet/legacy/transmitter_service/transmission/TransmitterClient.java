@@ -19,15 +19,34 @@
 package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
-import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.OverflowPolicy;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.ServiceConfiguration;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.EventLoop;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.internal.PlatformDependent;
 
 /**
- * This class holds the client session.
+ * This class holds the client session. The session state is confined to the
+ * event loop of the channel: messages may be sent from any thread, they are
+ * put into per-priority mailboxes that are drained by the event loop. All
+ * other methods must be called on the event loop.
  * 
  * @author Philipp Thiel
  */
@@ -37,20 +56,98 @@ final class TransmitterClient {
 		OK, RETRY, ERROR;
 	}
 
-	private final PriorityQueue<PagerMessage> messageQueue = new PriorityQueue<>();
+	/**
+	 * Upper bound for the send window. Keeping less than half of the 8 bit
+	 * sequence space outstanding keeps acks unambiguous.
+	 */
+	public static final int MAX_WINDOW_SIZE = 127;
+	private static final Logger logger = LogManager.getLogger();
+	private static final int SEQUENCE_SPACE = 256;
+	private static final long MIN_SWEEP_INTERVAL_MILLIS = 1000;
+	private static final PagerMessage.Priority[] PRIORITIES = PagerMessage.Priority.values();
+	private final Queue<PagerMessage>[] messageQueues;
+	// Evicted first to last when a queue is full, CALL only to enforce the hard limits
+	// and EMERGENCY never
+	private static final PagerMessage.Priority[] EVICTION_ORDER = { PagerMessage.Priority.RUBRIC,
+			PagerMessage.Priority.NEWS, PagerMessage.Priority.ACTIVATION, PagerMessage.Priority.TIME };
+	private final AtomicBoolean drainScheduled = new AtomicBoolean();
+	private final AtomicInteger queuedCount = new AtomicInteger();
+	private final AtomicLong queuedBytes = new AtomicLong();
+	private final int maxQueuedMessages;
+	private final long maxQueuedBytes;
+	private final int hardMaxQueuedMessages;
+	private final long hardMaxQueuedBytes;
+	private final OverflowPolicy overflowPolicy;
+	private final MessageScheduler scheduler;
+	private final long[] maxAgeMillis = new long[PRIORITIES.length];
+	private final boolean[] suppressDuplicates = new boolean[PRIORITIES.length];
+	private final DuplicateFilter duplicateFilter;
+	private final long sweepIntervalMillis;
+	private Timeout sweepTimeout;
+	private final long spillThreshold;
+	private volatile MessageJournal journal;
+	private final QueueStatistics queueStatistics = new QueueStatistics();
+	private final Message[] inFlight = new Message[SEQUENCE_SPACE];
 	private final Channel channel;
 	private int sequenceNumber;
-	private Message currentMessage;
+	private int inFlightCount;
+	private int windowSize = 1;
+	private boolean started;
+	private volatile boolean parked;
+	private volatile TransmitterClient successor;
+	private boolean discarded;
+	private Timer ackTimer;
+	private RetransmissionTimeout retransmissionTimeout;
+	private Timeout ackTimeout;
+	private final LinkStatistics statistics = new LinkStatistics();
 	private volatile Transmitter transmitter;
 
 	/**
 	 * Creates a new client session.
 	 * 
-	 * @param channel Client connection channel
-	 * @throws NullPointerException If channel is null.
+	 * @param channel       Client connection channel
+	 * @param configuration Service configuration providing the queue settings
+	 * @throws NullPointerException If channel or configuration is null.
 	 */
-	public TransmitterClient(Channel channel) {
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public TransmitterClient(Channel channel, ServiceConfiguration configuration) {
 		this.channel = Objects.requireNonNull(channel, "Channel must not be null.");
+		Objects.requireNonNull(configuration, "Configuration must not be null.");
+		this.maxQueuedMessages = configuration.getMaxQueuedMessages();
+		this.maxQueuedBytes = configuration.getMaxQueuedBytes();
+		this.hardMaxQueuedMessages = configuration.getHardMaxQueuedMessages();
+		this.hardMaxQueuedBytes = configuration.getHardMaxQueuedBytes();
+		this.overflowPolicy = configuration.getOverflowPolicy();
+		this.scheduler = MessageScheduler.create(configuration);
+
+		boolean filterDuplicates = false;
+		for (PagerMessage.Priority priority : PRIORITIES) {
+			suppressDuplicates[priority.ordinal()] = configuration.isDuplicateSuppressed(priority);
+			filterDuplicates |= suppressDuplicates[priority.ordinal()];
+		}
+
+		this.duplicateFilter = filterDuplicates
+				? new DuplicateFilter(configuration.getDuplicateWindow(), configuration.getDuplicateMaxEntries())
+				: null;
+
+		// Sweep idle queues at half the shortest maximum age, but not too often
+		long shortestAge = Long.MAX_VALUE;
+		for (PagerMessage.Priority priority : PRIORITIES) {
+			maxAgeMillis[priority.ordinal()] = TimeUnit.SECONDS.toMillis(configuration.getMaxMessageAge(priority));
+			if (maxAgeMillis[priority.ordinal()] > 0) {
+				shortestAge = Math.min(shortestAge, maxAgeMillis[priority.ordinal()]);
+			}
+		}
+
+		this.sweepIntervalMillis = shortestAge != Long.MAX_VALUE ? Math.max(MIN_SWEEP_INTERVAL_MILLIS, shortestAge / 2)
+				: 0;
+		this.spillThreshold = configuration.getSpillThreshold();
+
+		// One FIFO per priority, written by any thread and drained by the event loop
+		messageQueues = new Queue[PRIORITIES.length];
+		for (int i = 0; i < messageQueues.length; ++i) {
+			messageQueues[i] = PlatformDependent.newMpscQueue();
+		}
 	}
 
 	/**
@@ -115,20 +212,175 @@ final class TransmitterClient {
 	public void setTransmitter(Transmitter transmitter) {
 		if (transmitter != null) {
 			transmitter.setAddress((InetSocketAddress) channel.remoteAddress());
+			transmitter.setLinkStatistics(statistics);
+			transmitter.setQueueStatistics(queueStatistics);
 		}
 
 		this.transmitter = transmitter;
 	}
 
+	/**
+	 * Gets the journal of the pending messages.
+	 * 
+	 * @return Message journal or {@code null} if journaling is disabled
+	 */
+	MessageJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Sets the journal of the pending messages. Must be called before the client
+	 * is registered, spilled messages of the journal are loaded once the client
+	 * has been started.
+	 * 
+	 * @param journal Message journal, may be {@code null}
+	 */
+	void setJournal(MessageJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Gets the link statistics of this session.
+	 * 
+	 * @return Link statistics
+	 */
+	public LinkStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Gets the counters of messages dropped from the queue of this session.
+	 * 
+	 * @return Queue statistics
+	 */
+	public QueueStatistics getQueueStatistics() {
+		return queueStatistics;
+	}
+
+	/**
+	 * Gets the number of messages that may be awaiting an ack at the same time.
+	 * 
+	 * @return Send window size, 1 means stop-and-wait
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Sets the number of messages that may be awaiting an ack at the same time.
+	 * Values are limited to the range 1 to {@link #MAX_WINDOW_SIZE}.
+	 * 
+	 * @param windowSize Send window size, 1 means stop-and-wait
+	 */
+	public void setWindowSize(int windowSize) {
+		this.windowSize = Math.max(1, Math.min(windowSize, MAX_WINDOW_SIZE));
+	}
+
+	/**
+	 * Enables retransmission of messages that have not been acked in time. Once a
+	 * message has used up its retries the connection is closed, as the
+	 * transmitter is considered dead.
+	 * 
+	 * @param timer                 Timer shared by all clients
+	 * @param retransmissionTimeout Retransmission timeout of this client
+	 * @throws NullPointerException If timer or retransmissionTimeout is null.
+	 */
+	public void enableAckTimeout(Timer timer, RetransmissionTimeout retransmissionTimeout) {
+		this.ackTimer = Objects.requireNonNull(timer, "Timer must not be null.");
+		this.retransmissionTimeout = Objects.requireNonNull(retransmissionTimeout,
+				"Retransmission timeout must not be null.");
+
+		channel.closeFuture().addListener(f -> cancelAckTimeout());
+	}
+
+	/**
+	 * Periodically removes expired messages from the queues, so they do not use
+	 * memory while the transmitter is busy or idle. Expired messages are also
+	 * dropped when they are dequeued. This is a no-op if no priority expires.
+	 * 
+	 * @param timer Coarse timer shared by all clients
+	 * @throws NullPointerException If timer is null.
+	 */
+	public void enableExpirySweep(Timer timer) {
+		Objects.requireNonNull(timer, "Timer must not be null.");
+		if (sweepIntervalMillis <= 0) {
+			return;
+		}
+
+		scheduleSweep(timer);
+		channel.closeFuture().addListener(f -> {
+			if (sweepTimeout != null) {
+				sweepTimeout.cancel();
+				sweepTimeout = null;
+			}
+		});
+	}
+
+	/**
+	 * Gets the event loop the client session is confined to.
+	 * 
+	 * @return Event loop
+	 */
+	EventLoop eventLoop() {
+		return channel.eventLoop();
+	}
+
+	/**
+	 * Starts sending queued messages. Messages handed to the client before this
+	 * call (e.g. taken over from a previous session) are only queued.
+	 */
+	public void start() {
+		started = true;
+		sendNext(false);
+	}
+
+	/**
+	 * Stops sending after the connection has been closed. A parked client keeps
+	 * queuing messages until a new session of the transmitter takes them over.
+	 * Must be called from the event loop of the client.
+	 */
+	void park() {
+		started = false;
+		parked = true;
+	}
+
+	/**
+	 * Checks if the client has been parked.
+	 * 
+	 * @return True if the client has been parked
+	 */
+	boolean isParked() {
+		return parked;
+	}
+
+	/**
+	 * Moves all pending messages to the session that took over this one. Messages
+	 * queued later, e.g. by a broadcast that still holds this client, are
+	 * forwarded on the next drain. Must be called from the event loop of the
+	 * client.
+	 * 
+	 * @param successor Session that took over
+	 * @return Number of moved messages
+	 */
+	int moveTo(TransmitterClient successor) {
+		this.successor = successor;
+
+		final List<PagerMessage> pending = drainPendingMessages();
+		if (!pending.isEmpty()) {
+			successor.requeueMessages(pending);
+		}
+
+		return pending.size();
+	}
+
 	/**
 	 * Sends a message to the client.
 	 * 
 	 * @param msg Message to send.
 	 */
 	public void sendMessage(PagerMessage msg) {
-		synchronized (messageQueue) {
-			messageQueue.add(msg);
-			sendNext(false);
+		if (enqueue(msg)) {
+			scheduleDrain();
 		}
 	}
 
@@ -138,12 +390,71 @@ final class TransmitterClient {
 	 * @param messages Messages to send.
 	 */
 	public void sendMessages(Collection<PagerMessage> messages) {
-		synchronized (messageQueue) {
-			messageQueue.addAll(messages);
-			sendNext(false);
+		boolean queued = false;
+		for (PagerMessage msg : messages) {
+			queued |= enqueue(msg);
+		}
+
+		if (queued) {
+			scheduleDrain();
 		}
 	}
 
+	/**
+	 * Queues messages taken over from another session of the same transmitter.
+	 * The messages are already journaled and not checked for duplicates.
+	 * 
+	 * @param messages Messages to send.
+	 */
+	void requeueMessages(Collection<PagerMessage> messages) {
+		boolean queued = false;
+		for (PagerMessage msg : messages) {
+			if (offer(msg, null)) {
+				queued = true;
+			} else {
+				msg.removeRecipient();
+			}
+		}
+
+		if (queued) {
+			scheduleDrain();
+		}
+	}
+
+	/**
+	 * Removes all unsent messages including the message currently awaiting an ack
+	 * from this client.
+	 * 
+	 * @return List of removed messages, may be empty.
+	 */
+	public List<PagerMessage> drainPendingMessages() {
+		List<PagerMessage> pending = new ArrayList<>(getPendingMessageCount() + inFlightCount);
+		for (int i = 0; i < SEQUENCE_SPACE && inFlightCount > 0; ++i) {
+			if (inFlight[i] != null) {
+				pending.add(inFlight[i].getMessage());
+				inFlight[i] = null;
+				--inFlightCount;
+			}
+		}
+
+		PagerMessage msg;
+		while ((msg = pollMessage()) != null) {
+			pending.add(msg);
+		}
+
+		return pending;
+	}
+
+	/**
+	 * Drops all pending messages of a client that has been removed. Journaled
+	 * messages are kept for the next session. Messages sent to this client later
+	 * on are ignored. Must be called from the event loop of the client.
+	 */
+	void discardPendingMessages() {
+		discarded = true;
+		drainPendingMessages().forEach(PagerMessage::removeRecipient);
+	}
+
 	/**
 	 * Acknowleges a message and sends the next one.
 	 * 
@@ -151,38 +462,77 @@ final class TransmitterClient {
 	 * @param response       Ack response type.
 	 */
 	public boolean ackMessage(int sequenceNumber, AckType response) {
-		synchronized (messageQueue) {
-			if (currentMessage == null) {
+		if (inFlightCount == 0) {
+			statistics.recordInvalidAck();
+			return false;
+		}
+
+		// OK acks carry the next expected sequence number
+		int slot = response == AckType.OK ? (sequenceNumber + SEQUENCE_SPACE - 1) % SEQUENCE_SPACE
+				: sequenceNumber % SEQUENCE_SPACE;
+		Message message = inFlight[slot];
+		boolean valid = message != null;
+		if (!valid) {
+			// With retransmissions a duplicate ack of a resent message must not be
+			// credited to the next message in flight
+			if (windowSize > 1 || retransmissionTimeout != null) {
+				statistics.recordInvalidAck();
 				return false;
 			}
 
-			boolean valid = false;
-			boolean retransmit = false;
-			switch (response) {
-			case OK:
-				valid = currentMessage.getExpectedSequenceNumber() == sequenceNumber;
-				currentMessage = null;
-				break;
-			case RETRY:
-				valid = currentMessage.getSequenceNumber() == sequenceNumber;
-				if (!currentMessage.retry()) {
-					// Too many retries, discard message
-					currentMessage = null;
-				} else {
-					retransmit = true;
-				}
-				break;
-			case ERROR:
-				valid = currentMessage.getSequenceNumber() == sequenceNumber;
-				// Discard message
-				currentMessage = null;
-				break;
+			// Stop-and-wait without retransmissions: the ack belongs to the only message
+			// in flight
+			slot = (this.sequenceNumber + SEQUENCE_SPACE - 1) % SEQUENCE_SPACE;
+			message = inFlight[slot];
+			if (message == null) {
+				return false;
 			}
+		}
 
-			sendNext(retransmit);
+		if (valid) {
+			// Latency of retransmitted messages is ambiguous and not sampled
+			final long latency = message.isRetransmitted() ? -1 : System.nanoTime() - message.getSentAt();
+			statistics.recordAck(response, latency);
+			if (retransmissionTimeout != null && latency >= 0) {
+				retransmissionTimeout.addSample(TimeUnit.NANOSECONDS.toMillis(latency));
+			}
+		} else {
+			statistics.recordInvalidAck();
+		}
+
+		boolean retransmit = false;
+		switch (response) {
+		case OK:
+			removeInFlight(slot);
+			complete(message.getMessage());
+			break;
+		case RETRY:
+			if (!message.retry()) {
+				// Too many retries, discard message
+				removeInFlight(slot);
+				complete(message.getMessage());
+			} else {
+				retransmit = true;
+			}
+			break;
+		case ERROR:
+			// Discard message
+			removeInFlight(slot);
+			complete(message.getMessage());
+			break;
+		}
 
-			return valid;
+		if (retransmit) {
+			transmit(message, true);
 		}
+
+		sendNext(retransmit);
+
+		if (inFlightCount == 0) {
+			cancelAckTimeout();
+		}
+
+		return valid;
 	}
 
 	/**
@@ -191,9 +541,7 @@ final class TransmitterClient {
 	 * @return Number of pending messages.
 	 */
 	public int getPendingMessageCount() {
-		synchronized (messageQueue) {
-			return messageQueue.size();
-		}
+		return queuedCount.get();
 	}
 
 	/**
@@ -207,22 +555,385 @@ final class TransmitterClient {
 
 	private int getNextSequenceNumber() {
 		int sn = sequenceNumber;
-		sequenceNumber = (sequenceNumber + 1) % 256;
+		sequenceNumber = (sequenceNumber + 1) % SEQUENCE_SPACE;
 		return sn;
 	}
 
-	private void sendNext(boolean retransmit) {
-		if (currentMessage == null) {
-			PagerMessage msg = messageQueue.poll();
+	private void scheduleDrain() {
+		if (channel.eventLoop().inEventLoop()) {
+			// Broadcasts are handed to the event loop already, no need for another task
+			drain();
+			return;
+		}
+
+		// One pending drain task per client is enough to pick up all messages
+		if (drainScheduled.compareAndSet(false, true)) {
+			try {
+				channel.eventLoop().execute(this::drain);
+			} catch (RejectedExecutionException ex) {
+				logger.debug("Event loop of {} is shut down, messages are not sent.", getName());
+			}
+		}
+	}
+
+	private void drain() {
+		drainScheduled.set(false);
+
+		final TransmitterClient next = successor;
+		if (next != null) {
+			moveTo(next);
+			return;
+		}
+
+		evictOverflow();
+		sendNext(false);
+	}
+
+	private boolean enqueue(PagerMessage msg) {
+		if (discarded) {
+			// Late broadcast to a removed client
+			return false;
+		}
+
+		if (suppressDuplicates[msg.getPriority().ordinal()] && duplicateFilter.isDuplicate(msg)) {
+			queueStatistics.recordDuplicate(msg.getPriority());
+			return false;
+		}
+
+		final MessageJournal journal = this.journal;
+		if (journal != null && shouldSpill(journal, msg) && journal.append(msg, true)) {
+			// Loaded again once the queue has room, see refill()
+			return true;
+		}
+
+		// Registered before queuing, the message may be acked right away
+		msg.addRecipient();
+		if (!offer(msg, journal)) {
+			msg.removeRecipient();
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds the message to its queue.
+	 * 
+	 * @param msg     Message to add
+	 * @param journal Journal to record the message in or {@code null}
+	 * @return True if the message has been queued
+	 */
+	private boolean offer(PagerMessage msg, MessageJournal journal) {
+		final int length = MessageEncoder.getEncodedLength(msg);
+		final int count = queuedCount.incrementAndGet();
+		final long bytes = queuedBytes.addAndGet(length);
+
+		if (overflowPolicy == OverflowPolicy.REJECT_NEW && isEvictable(msg.getPriority())
+				&& isOverLimit(count, bytes)) {
+			queuedCount.decrementAndGet();
+			queuedBytes.addAndGet(-length);
+			queueStatistics.recordRejected(msg.getPriority());
+			return false;
+		}
+
+		// Record before queuing, the message may be acked right away
+		if (journal != null) {
+			journal.append(msg, false);
+		}
+
+		messageQueues[msg.getPriority().ordinal()].offer(msg);
+		return true;
+	}
+
+	private boolean shouldSpill(MessageJournal journal, PagerMessage msg) {
+		// Emergency and time messages are always kept in memory
+		if (spillThreshold <= 0 || msg.getPriority() == PagerMessage.Priority.EMERGENCY
+				|| msg.getPriority() == PagerMessage.Priority.TIME) {
+			return false;
+		}
+
+		// Keep spilling until the journal is drained to preserve the order, spill
+		// before the queue limits would drop anything
+		final long bytes = queuedBytes.get() + MessageEncoder.getEncodedLength(msg);
+		return journal.hasSpilled() || bytes > spillThreshold || isOverLimit(queuedCount.get() + 1, bytes);
+	}
+
+	/**
+	 * Loads spilled messages from the journal while the queue is below the spill
+	 * threshold and its limits. Messages that do not fit stay in the journal.
+	 */
+	private void refill() {
+		final MessageJournal journal = this.journal;
+		if (journal == null) {
+			return;
+		}
+
+		final long now = System.currentTimeMillis();
+		while ((spillThreshold <= 0 || queuedBytes.get() < spillThreshold) && journal.hasSpilled()) {
+			final PagerMessage msg = journal.pollSpilled();
+			if (msg == null) {
+				break;
+			} else if (isExpired(msg, now)) {
+				queueStatistics.recordExpired(msg.getPriority());
+				journal.remove(msg);
+				continue;
+			}
+
+			// An empty queue takes any message, even one exceeding the byte limit
+			final int count = queuedCount.get();
+			if (count > 0 && isOverLimit(count + 1, queuedBytes.get() + MessageEncoder.getEncodedLength(msg))) {
+				journal.respill(msg);
+				break;
+			}
+
+			msg.addRecipient();
+			if (!offer(msg, null)) {
+				if (count > 0) {
+					journal.respill(msg);
+					break;
+				}
+
+				// Rejected by an empty queue, the message will never fit
+				journal.remove(msg);
+			}
+		}
+	}
+
+	/**
+	 * Removes a message that has been acked or dropped from the journal and lets
+	 * go of its encoded body unless other transmitters still need it.
+	 * 
+	 * @param msg Message
+	 */
+	private void complete(PagerMessage msg) {
+		msg.removeRecipient();
+
+		final MessageJournal journal = this.journal;
+		if (journal != null) {
+			journal.remove(msg);
+		}
+	}
+
+	/**
+	 * Evicts low priority messages until the queue is within its limits. Limits
+	 * are enforced by the event loop, so they may be exceeded briefly until the
+	 * next drain.
+	 */
+	private void evictOverflow() {
+		while (isOverLimit(queuedCount.get(), queuedBytes.get())) {
+			PagerMessage victim = null;
+			for (PagerMessage.Priority priority : EVICTION_ORDER) {
+				victim = pollMessage(messageQueues[priority.ordinal()]);
+				if (victim != null) {
+					break;
+				}
+			}
+
+			if (victim == null) {
+				// Only messages that must not be evicted are left
+				break;
+			}
+
+			queueStatistics.recordEvicted(victim.getPriority());
+			complete(victim);
+			logger.debug("Queue of {} is full, evicted {} message.", getName(), victim.getPriority());
+		}
+
+		// Oldest call messages are dropped only if the hard limits are exceeded
+		final Queue<PagerMessage> calls = messageQueues[PagerMessage.Priority.CALL.ordinal()];
+		while (isOverHardLimit(queuedCount.get(), queuedBytes.get())) {
+			final PagerMessage victim = pollMessage(calls);
+			if (victim == null) {
+				break;
+			}
+
+			queueStatistics.recordEvicted(victim.getPriority());
+			complete(victim);
+			logger.debug("Queue of {} exceeds the hard limits, evicted {} message.", getName(),
+					victim.getPriority());
+		}
+	}
+
+	private boolean isOverLimit(int count, long bytes) {
+		return (maxQueuedMessages > 0 && count > maxQueuedMessages) || (maxQueuedBytes > 0 && bytes > maxQueuedBytes);
+	}
+
+	private boolean isOverHardLimit(int count, long bytes) {
+		return (hardMaxQueuedMessages > 0 && count > hardMaxQueuedMessages)
+				|| (hardMaxQueuedBytes > 0 && bytes > hardMaxQueuedBytes);
+	}
+
+	private static boolean isEvictable(PagerMessage.Priority priority) {
+		return priority != PagerMessage.Priority.EMERGENCY && priority != PagerMessage.Priority.CALL;
+	}
+
+	private PagerMessage pollMessage() {
+		final long now = System.currentTimeMillis();
+		int index;
+		while ((index = scheduler.select(messageQueues, now)) >= 0) {
+			// Returns null if only expired messages were left in the queue
+			final PagerMessage msg = pollMessage(messageQueues[index]);
 			if (msg != null) {
-				currentMessage = new Message(getNextSequenceNumber(), msg);
-				channel.writeAndFlush(currentMessage);
+				scheduler.onSelected(msg);
+				return msg;
+			}
+		}
+
+		return null;
+	}
+
+	private PagerMessage pollMessage(Queue<PagerMessage> queue) {
+		final long now = System.currentTimeMillis();
+		PagerMessage msg;
+		while ((msg = queue.poll()) != null) {
+			queuedCount.decrementAndGet();
+			queuedBytes.addAndGet(-MessageEncoder.getEncodedLength(msg));
+
+			if (!isExpired(msg, now)) {
+				return msg;
+			}
+
+			queueStatistics.recordExpired(msg.getPriority());
+			complete(msg);
+		}
+
+		return null;
+	}
+
+	private boolean isExpired(PagerMessage msg, long now) {
+		final long maxAge = maxAgeMillis[msg.getPriority().ordinal()];
+		return maxAge > 0 && now - msg.getTimestampMillis() > maxAge;
+	}
+
+	private void scheduleSweep(Timer timer) {
+		sweepTimeout = timer.newTimeout(t -> channel.eventLoop().execute(() -> {
+			if (channel.isActive()) {
+				sweepExpired();
+				scheduleSweep(timer);
 			}
-		} else if (retransmit) {
-			channel.writeAndFlush(currentMessage);
+		}), sweepIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void sweepExpired() {
+		// Messages are queued in arrival order, so expired ones are found at the head
+		final long now = System.currentTimeMillis();
+		int count = 0;
+		for (Queue<PagerMessage> queue : messageQueues) {
+			PagerMessage msg;
+			while ((msg = queue.peek()) != null && isExpired(msg, now)) {
+				queue.poll();
+				queuedCount.decrementAndGet();
+				queuedBytes.addAndGet(-MessageEncoder.getEncodedLength(msg));
+				queueStatistics.recordExpired(msg.getPriority());
+				complete(msg);
+				++count;
+			}
+		}
+
+		if (count > 0) {
+			logger.debug("Removed {} expired messages from queue of {}.", count, getName());
 		}
 	}
 
+	private void removeInFlight(int slot) {
+		inFlight[slot] = null;
+		--inFlightCount;
+	}
+
+	private void sendNext(boolean flush) {
+		if (started) {
+			refill();
+
+			while (inFlightCount < windowSize && inFlight[sequenceNumber] == null) {
+				PagerMessage msg = pollMessage();
+				if (msg == null) {
+					break;
+				}
+
+				Message message = new Message(getNextSequenceNumber(), msg);
+				inFlight[message.getSequenceNumber()] = message;
+				++inFlightCount;
+
+				transmit(message, false);
+				flush = true;
+			}
+		}
+
+		if (flush) {
+			channel.flush();
+		}
+	}
+
+	private void transmit(Message message, boolean retransmit) {
+		message.markSent(System.nanoTime(), retransmit);
+		channel.write(message);
+
+		if (ackTimer != null && ackTimeout == null) {
+			scheduleAckTimeout(retransmissionTimeout.getTimeout());
+		}
+	}
+
+	private void scheduleAckTimeout(long delayMillis) {
+		// Timer thread only hands over to the event loop of this channel
+		ackTimeout = ackTimer.newTimeout(t -> channel.eventLoop().execute(this::checkAckTimeouts), delayMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	private void cancelAckTimeout() {
+		if (ackTimeout != null) {
+			ackTimeout.cancel();
+			ackTimeout = null;
+		}
+	}
+
+	private void checkAckTimeouts() {
+		ackTimeout = null;
+		if (inFlightCount == 0 || !channel.isActive()) {
+			return;
+		}
+
+		final long now = System.nanoTime();
+		final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(retransmissionTimeout.getTimeout());
+		boolean expired = false;
+		for (int slot = 0; slot < SEQUENCE_SPACE; ++slot) {
+			final Message message = inFlight[slot];
+			if (message == null || now - message.getSentAt() < timeoutNanos) {
+				continue;
+			}
+
+			statistics.recordTimeout();
+			if (!message.retry()) {
+				// Kept in flight and not completed: drainPendingMessages() hands it to the
+				// next session first, or the journal spills it once the client is removed
+				logger.warn("No ack from {} for message {} after {} attempts, closing connection.", getName(),
+						slot, Message.MAX_RETRY_COUNT);
+				channel.close();
+				return;
+			}
+
+			message.markSent(now, true);
+			channel.write(message);
+			expired = true;
+		}
+
+		if (expired) {
+			retransmissionTimeout.backoff();
+			channel.flush();
+		}
+
+		// Rearm for the message that expires next
+		final long nextTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(retransmissionTimeout.getTimeout());
+		long delay = nextTimeoutNanos;
+		for (int slot = 0; slot < SEQUENCE_SPACE; ++slot) {
+			final Message message = inFlight[slot];
+			if (message != null) {
+				delay = Math.min(delay, nextTimeoutNanos - (now - message.getSentAt()));
+			}
+		}
+
+		scheduleAckTimeout(Math.max(1, TimeUnit.NANOSECONDS.toMillis(delay)));
+	}
+
 	/**
 	 * This class wraps a non-transmitter message for transmission to a specific
 	 * transmitter.
@@ -234,6 +945,8 @@ final class TransmitterClient {
 		private final int sequenceNumber;
 		private final PagerMessage message;
 		private int retryCount;
+		private long sentAt;
+		private boolean retransmitted;
 
 		public Message(int sequenceNumber, PagerMessage message) {
 			this.sequenceNumber = sequenceNumber;
@@ -246,13 +959,26 @@ final class TransmitterClient {
 
 		public int getExpectedSequenceNumber() {
 			/* Warp around on 8 Bits */
-			return ((sequenceNumber + 1) % 256);
+			return ((sequenceNumber + 1) % SEQUENCE_SPACE);
 		}
 
 		public PagerMessage getMessage() {
 			return message;
 		}
 
+		public long getSentAt() {
+			return sentAt;
+		}
+
+		public boolean isRetransmitted() {
+			return retransmitted;
+		}
+
+		void markSent(long sentAt, boolean retransmit) {
+			this.sentAt = sentAt;
+			this.retransmitted |= retransmit;
+		}
+
 		public boolean retry() {
 			++retryCount;
 			return retryCount < MAX_RETRY_COUNT;
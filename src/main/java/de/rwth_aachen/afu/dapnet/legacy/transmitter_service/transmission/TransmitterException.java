@@ -24,4 +24,8 @@ public class TransmitterException extends Exception {
 	public TransmitterException(String message) {
 		super(message);
 	}
+
+	protected TransmitterException(String message, boolean writableStackTrace) {
+		super(message, null, false, writableStackTrace);
+	}
 }
\ No newline at end of file
@@ -18,22 +18,36 @@
 
 package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend.CachingBootstrapService;
 import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend.TransmitterBootstrapService;
 import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend.TransmitterHeartbeatService;
 import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend.TransmitterMessageQueueManager;
 import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend.TransmitterServices;
 import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.ServiceConfiguration;
 import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.Transmitter.Status;
+import io.netty.channel.EventLoop;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
 
 /**
  * This class manages connected transmitters.
@@ -45,7 +59,14 @@ public class TransmitterManager {
 	private final ConcurrentMap<String, TransmitterClient> connectedClients = new ConcurrentHashMap<>();
 	private final ServiceConfiguration configuration;
 	private final TransmitterServices transmitterServices;
+	private final TransmitterBootstrapService bootstrapService;
 	private final TransmitterMessageQueueManager mqManager;
+	private final HeartbeatScheduler heartbeatScheduler;
+	private final HandshakeAdmission handshakeAdmission;
+	private final HashedWheelTimer ackTimer = new HashedWheelTimer(100, TimeUnit.MILLISECONDS);
+	private final HashedWheelTimer expiryTimer = new HashedWheelTimer(1, TimeUnit.SECONDS);
+	private final ConcurrentMap<String, MessageJournal> journals = new ConcurrentHashMap<>();
+	private final int gracePeriod;
 
 	/**
 	 * Constructs a new transmitter manager instance.
@@ -60,6 +81,37 @@ public class TransmitterManager {
 		this.transmitterServices = Objects.requireNonNull(transmitterServices,
 				"Transmitter services must not be null.");
 		this.mqManager = Objects.requireNonNull(mqManager, "Message queue manager must not be null.");
+
+		if (configuration.getBootstrapCacheTtl() > 0) {
+			this.bootstrapService = new CachingBootstrapService(transmitterServices, configuration);
+		} else {
+			this.bootstrapService = transmitterServices;
+		}
+
+		this.heartbeatScheduler = new HeartbeatScheduler(transmitterServices, expiryTimer,
+				configuration.getHeartbeatInterval() * 1000L);
+		this.handshakeAdmission = new HandshakeAdmission(configuration);
+		this.gracePeriod = configuration.getSessionGracePeriod();
+	}
+
+	/**
+	 * Stops the heartbeat scheduler and the session timers. Should be called once
+	 * all transmitters are disconnected.
+	 */
+	public void shutdown() {
+		heartbeatScheduler.shutdown();
+		ackTimer.stop();
+		expiryTimer.stop();
+		journals.values().forEach(MessageJournal::close);
+
+		logger.info("Handshakes admitted: {}, queued: {}, rejected: {}", handshakeAdmission.getAdmittedCount(),
+				handshakeAdmission.getQueuedCount(), handshakeAdmission.getRejectedCount());
+
+		if (bootstrapService instanceof CachingBootstrapService) {
+			final CachingBootstrapService cache = (CachingBootstrapService) bootstrapService;
+			logger.info("Bootstrap cache hits: {}, stale hits: {}, negative hits: {}, misses: {}",
+					cache.getHitCount(), cache.getStaleHitCount(), cache.getNegativeHitCount(), cache.getMissCount());
+		}
 	}
 
 	/**
@@ -80,17 +132,80 @@ public class TransmitterManager {
 		return transmitterServices;
 	}
 
+	/**
+	 * Gets the transmitter heartbeat scheduler.
+	 * 
+	 * @return Heartbeat scheduler
+	 */
+	HeartbeatScheduler getHeartbeatScheduler() {
+		return heartbeatScheduler;
+	}
+
+	/**
+	 * Gets the timer used for message ack timeouts of all clients.
+	 * 
+	 * @return Ack timer
+	 */
+	Timer getAckTimer() {
+		return ackTimer;
+	}
+
+	/**
+	 * Gets the coarse timer used to sweep expired messages of all clients.
+	 * 
+	 * @return Expiry timer
+	 */
+	Timer getExpiryTimer() {
+		return expiryTimer;
+	}
+
+	/**
+	 * Gets the journal of the pending messages of a transmitter. The journal is
+	 * opened on first use and replays the messages left from earlier sessions.
+	 * 
+	 * @param transmitterName Normalized transmitter name
+	 * @return Message journal or {@code null} if journaling is disabled or the
+	 *         journal could not be opened.
+	 */
+	MessageJournal getJournal(String transmitterName) {
+		final String directory = configuration.getJournalDirectory();
+		if (directory == null) {
+			return null;
+		}
+
+		return journals.computeIfAbsent(transmitterName, name -> {
+			// Keep the file name safe whatever the transmitter is called
+			final Path path = Paths.get(directory, name.replaceAll("[^a-z0-9_-]", "_"));
+			try {
+				return MessageJournal.open(path, configuration.getJournalSegmentSize());
+			} catch (IOException | RuntimeException ex) {
+				logger.error("Failed to open message journal for transmitter '{}'.", name, ex);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Gets the handshake admission control.
+	 * 
+	 * @return Handshake admission control
+	 */
+	HandshakeAdmission getHandshakeAdmission() {
+		return handshakeAdmission;
+	}
+
 	/**
 	 * Gets the transmitter bootstrap service.
 	 * 
 	 * @return Transmitter bootstrap service
 	 */
 	public TransmitterBootstrapService getBootstrapService() {
-		return transmitterServices;
+		return bootstrapService;
 	}
 
 	/**
-	 * Gets an unmodifyable collection of the currently connected clients.
+	 * Gets an unmodifyable collection of the currently connected clients,
+	 * including parked ones.
 	 * 
 	 * @return Collection of transmitter clients
 	 */
@@ -99,21 +214,65 @@ public class TransmitterManager {
 	}
 
 	/**
-	 * Sends a message to all connected transmitters.
+	 * Sends a message to all connected transmitters. The message is encoded once
+	 * before it is handed to the transmitters and shared by all of them.
 	 * 
 	 * @param message Message to send.
 	 */
 	public void sendMessage(PagerMessage message) {
-		connectedClients.values().forEach(c -> c.sendMessage(message));
+		sendMessages(Collections.singletonList(message));
 	}
 
 	/**
-	 * Sends messages to all connected transmitters.
+	 * Sends messages to all connected transmitters. The messages are encoded once
+	 * before they are handed to the transmitters and shared by all of them.
 	 * 
 	 * @param messages Messages to send
 	 */
 	public void sendMessages(Collection<PagerMessage> messages) {
-		connectedClients.values().forEach(c -> c.sendMessages(messages));
+		// Held by the broadcast so the bodies are not released before every event loop
+		// has queued the messages
+		for (PagerMessage message : messages) {
+			message.addRecipient();
+			MessageEncoder.getEncodedBody(message);
+		}
+
+		try {
+			broadcast(c -> c.sendMessages(messages), messages);
+		} finally {
+			messages.forEach(PagerMessage::removeRecipient);
+		}
+	}
+
+	/**
+	 * Runs the action for all connected clients, using a single task per event
+	 * loop instead of one per client. Each task holds the messages until it is
+	 * done.
+	 * 
+	 * @param action   Action to run in the event loop of each client
+	 * @param messages Messages sent by the action
+	 */
+	private void broadcast(Consumer<TransmitterClient> action, Collection<PagerMessage> messages) {
+		final Map<EventLoop, List<TransmitterClient>> clientsByLoop = new IdentityHashMap<>();
+		for (TransmitterClient client : connectedClients.values()) {
+			clientsByLoop.computeIfAbsent(client.eventLoop(), l -> new ArrayList<>()).add(client);
+		}
+
+		clientsByLoop.forEach((loop, clients) -> {
+			messages.forEach(PagerMessage::addRecipient);
+			try {
+				loop.execute(() -> {
+					try {
+						clients.forEach(action);
+					} finally {
+						messages.forEach(PagerMessage::removeRecipient);
+					}
+				});
+			} catch (RejectedExecutionException ex) {
+				messages.forEach(PagerMessage::removeRecipient);
+				logger.debug("Event loop is shut down, broadcast to {} clients is not sent.", clients.size());
+			}
+		});
 	}
 
 	/**
@@ -151,7 +310,7 @@ public class TransmitterManager {
 		Transmitter t = client.getTransmitter();
 		if (t == null) {
 			logger.warn("Client has no associated transmitter object.");
-			client.close().syncUninterruptibly();
+			client.close();
 			return;
 		}
 
@@ -162,7 +321,17 @@ public class TransmitterManager {
 		t.setConnectedSince(lastConnected);
 
 		final String transmitterName = t.getNormalizedName();
-		connectedClients.put(transmitterName, client);
+		final TransmitterClient previous = connectedClients.put(transmitterName, client);
+		client.start();
+
+		if (previous != null) {
+			// Session took over an existing one, the queue is still bound
+			if (previous != client) {
+				supersede(transmitterName, previous, client);
+			}
+
+			return;
+		}
 
 		logger.debug("Binding queue for transmitter '{}'", transmitterName);
 
@@ -193,8 +362,44 @@ public class TransmitterManager {
 		t.setConnectedSince(null);
 
 		final String transmitterName = t.getNormalizedName();
-		connectedClients.remove(transmitterName);
+		final TransmitterClient current = removeOrPark(transmitterName, client);
+		if (current == client) {
+			logger.info("Parking queue of transmitter '{}' for {} s.", transmitterName, gracePeriod);
+			expiryTimer.newTimeout(timeout -> expireParked(transmitterName, client), gracePeriod, TimeUnit.SECONDS);
+			return;
+		} else if (current != null) {
+			// Session has been taken over, hand the remaining messages to the successor
+			moveMessages(transmitterName, client, current);
+			return;
+		}
+
+		cancelQueue(transmitterName);
+	}
 
+	/**
+	 * Removes a parked client once its grace period is over, unless the
+	 * transmitter has reconnected in the meantime.
+	 * 
+	 * @param transmitterName Normalized transmitter name
+	 * @param client          Parked client
+	 */
+	private void expireParked(String transmitterName, TransmitterClient client) {
+		if (removeClient(transmitterName, client)) {
+			logger.info("Transmitter '{}' did not reconnect within {} s, dropping {} parked messages.",
+					transmitterName, gracePeriod, client.getPendingMessageCount());
+			cancelQueue(transmitterName);
+		}
+	}
+
+	private void moveMessages(String transmitterName, TransmitterClient previous, TransmitterClient successor) {
+		final int count = previous.moveTo(successor);
+		if (count > 0) {
+			logger.info("Moved {} pending messages of transmitter '{}' to the new session.", count,
+					transmitterName);
+		}
+	}
+
+	private void cancelQueue(String transmitterName) {
 		logger.debug("Canceling queue for transmitter '{}'", transmitterName);
 
 		try {
@@ -206,6 +411,76 @@ public class TransmitterManager {
 		}
 	}
 
+	/**
+	 * Parks the client if a grace period is configured, otherwise removes it. This
+	 * is atomic with respect to a new session taking over.
+	 * 
+	 * @param transmitterName Normalized transmitter name
+	 * @param client          Disconnected client
+	 * @return The client itself if it has been parked, the session that took
+	 *         over or {@code null} if the client has been removed.
+	 */
+	private TransmitterClient removeOrPark(String transmitterName, TransmitterClient client) {
+		if (gracePeriod <= 0) {
+			return removeClient(transmitterName, client) ? null : connectedClients.get(transmitterName);
+		}
+
+		final TransmitterClient[] result = { null };
+		connectedClients.computeIfPresent(transmitterName, (name, current) -> {
+			if (current == client) {
+				client.park();
+			}
+
+			result[0] = current;
+			return current;
+		});
+
+		return result[0];
+	}
+
+	/**
+	 * Removes the client if it is still registered for the transmitter. Its
+	 * journaled messages are kept for the next session, a new session cannot
+	 * register before they have been unloaded.
+	 * 
+	 * @param transmitterName Normalized transmitter name
+	 * @param client          Client to remove
+	 * @return True if the client has been removed
+	 */
+	private boolean removeClient(String transmitterName, TransmitterClient client) {
+		final boolean[] removed = { false };
+		connectedClients.computeIfPresent(transmitterName, (name, current) -> {
+			if (current != client) {
+				return current;
+			}
+
+			final MessageJournal journal = client.getJournal();
+			if (journal != null) {
+				journal.unload();
+			}
+
+			discardPendingMessages(client);
+			removed[0] = true;
+			return null;
+		});
+
+		return removed[0];
+	}
+
+	/**
+	 * Lets go of the messages queued on a removed client so their encoded bodies
+	 * are released.
+	 * 
+	 * @param client Removed client
+	 */
+	private void discardPendingMessages(TransmitterClient client) {
+		try {
+			client.eventLoop().execute(client::discardPendingMessages);
+		} catch (RejectedExecutionException ex) {
+			logger.debug("Event loop is shut down, queue of removed client is not discarded.");
+		}
+	}
+
 	/**
 	 * Disconnects from all connected transmitters.
 	 */
@@ -214,14 +489,56 @@ public class TransmitterManager {
 	}
 
 	/**
-	 * Disconnects from the given transmitter.
+	 * Disconnects from the given transmitter. This does not wait for the
+	 * connection to be closed, the client is removed by {@link #onDisconnect}.
 	 * 
 	 * @param t Transmitter to disconnect from.
 	 */
 	public void disconnectFrom(Transmitter t) {
-		TransmitterClient cl = connectedClients.remove(t.getNormalizedName());
+		TransmitterClient cl = connectedClients.get(t.getNormalizedName());
 		if (cl != null) {
-			cl.close().syncUninterruptibly();
+			cl.close();
+		}
+	}
+
+	/**
+	 * Lets a new session take over an already connected transmitter. The old
+	 * session is closed without blocking, its unsent and in-flight messages are
+	 * moved to the new session once it is gone. The messages of a parked session
+	 * are moved right away. The new session only starts
+	 * sending after {@link #onConnect} has been called. This is a no-op if the
+	 * transmitter is not connected.
+	 * 
+	 * @param successor New transmitter session, its transmitter must be set.
+	 */
+	public void takeOver(TransmitterClient successor) {
+		final Transmitter t = successor.getTransmitter();
+		if (t == null) {
+			return;
+		}
+
+		final String transmitterName = t.getNormalizedName();
+		final TransmitterClient previous = connectedClients.replace(transmitterName, successor);
+		if (previous != null && previous != successor) {
+			supersede(transmitterName, previous, successor);
+		}
+	}
+
+	private void supersede(String transmitterName, TransmitterClient previous, TransmitterClient successor) {
+		if (!previous.isParked()) {
+			// The pending messages are moved by the event loop of the previous session
+			// once it is closed, see onDisconnect()
+			logger.info("Transmitter '{}' reconnected, closing previous session.", transmitterName);
+			previous.close();
+			return;
+		}
+
+		// The disconnect has been handled already, the queue is still bound
+		logger.info("Transmitter '{}' reconnected within the grace period, reattaching its queue.", transmitterName);
+		try {
+			previous.eventLoop().execute(() -> moveMessages(transmitterName, previous, successor));
+		} catch (RejectedExecutionException ex) {
+			logger.debug("Event loop is shut down, parked messages of '{}' are not moved.", transmitterName);
 		}
 	}
 
@@ -24,9 +24,16 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.CoreStartupException;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.ServiceConfiguration;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.TransportMode;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 
@@ -39,16 +46,50 @@ public class TransmitterServer {
 
 	private static final Logger LOGGER = LogManager.getLogger();
 	private final TransmitterManager manager;
-	private final EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-	private final EventLoopGroup workerGroup = new NioEventLoopGroup();
+	private final boolean useEpoll;
+	private final EventLoopGroup bossGroup;
+	private final EventLoopGroup workerGroup;
 
 	/**
 	 * Constructs a new object instance.
 	 * 
 	 * @param manager Transmitter manager to use
+	 * @throws CoreStartupException if the configured transport is not available
 	 */
 	public TransmitterServer(TransmitterManager manager) {
 		this.manager = Objects.requireNonNull(manager, "Transmitter manager must not be null.");
+
+		final ServiceConfiguration config = manager.getConfiguration();
+		useEpoll = selectEpoll(config.getTransportMode());
+
+		if (useEpoll) {
+			// Only SO_REUSEPORT binds more than one server channel
+			bossGroup = new EpollEventLoopGroup(config.isReusePort() ? Math.max(1, config.getAcceptorThreads()) : 1);
+			workerGroup = new EpollEventLoopGroup();
+		} else {
+			bossGroup = new NioEventLoopGroup(1);
+			workerGroup = new NioEventLoopGroup();
+		}
+	}
+
+	private static boolean selectEpoll(TransportMode mode) {
+		switch (mode) {
+		case EPOLL:
+			if (!Epoll.isAvailable()) {
+				throw new CoreStartupException("Native epoll transport is not available.", Epoll.unavailabilityCause());
+			}
+
+			return true;
+		case AUTO:
+			if (Epoll.isAvailable()) {
+				return true;
+			}
+
+			LOGGER.info("Native epoll transport not available, falling back to NIO.");
+			return false;
+		default:
+			return false;
+		}
 	}
 
 	/**
@@ -58,22 +99,55 @@ public class TransmitterServer {
 	 */
 	public void start() {
 		try {
-			int port = manager.getConfiguration().getServerPort();
+			final ServiceConfiguration config = manager.getConfiguration();
+			final int port = config.getServerPort();
 
 			ServerBootstrap b = new ServerBootstrap();
 			b.group(bossGroup, workerGroup);
-			b.channel(NioServerSocketChannel.class);
+			b.channel(getServerChannelClass());
 			b.childHandler(new ServerInitializer(manager));
 			b.childOption(ChannelOption.SO_KEEPALIVE, true);
-			b.bind(port).sync();
+			b.childOption(ChannelOption.TCP_NODELAY, config.isTcpNoDelay());
 
-			LOGGER.info("Server started on port: {}", port);
+			if (config.getSendBufferSize() > 0) {
+				b.childOption(ChannelOption.SO_SNDBUF, config.getSendBufferSize());
+			}
+
+			if (config.getReceiveBufferSize() > 0) {
+				b.childOption(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+			}
+
+			int numBinds = 1;
+			if (useEpoll) {
+				if (config.isReusePort()) {
+					b.option(EpollChannelOption.SO_REUSEPORT, true);
+					// Bind once per acceptor thread, the kernel balances incoming connections
+					numBinds = Math.max(1, config.getAcceptorThreads());
+				}
+			} else if (config.isReusePort()) {
+				LOGGER.warn("SO_REUSEPORT requires the epoll transport, ignoring.");
+			}
+
+			for (int i = 0; i < numBinds; ++i) {
+				b.bind(port).sync();
+			}
+
+			LOGGER.info("Server started on port {} using {} transport ({} acceptors).", port,
+					useEpoll ? "epoll" : "NIO", numBinds);
 		} catch (Exception ex) {
 			// LOGGER.fatal("Failed to start the server.", ex);
 			throw new CoreStartupException(ex);
 		}
 	}
 
+	private Class<? extends ServerChannel> getServerChannelClass() {
+		if (useEpoll) {
+			return EpollServerSocketChannel.class;
+		} else {
+			return NioServerSocketChannel.class;
+		}
+	}
+
 	/**
 	 * Stops the transmitter server.
 	 */
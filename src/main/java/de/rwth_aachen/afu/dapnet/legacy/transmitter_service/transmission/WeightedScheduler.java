@@ -0,0 +1,108 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.util.Queue;
+
+/**
+ * Shares the link between priorities using deficit round robin. Each priority
+ * receives a quantum of encoded bytes proportional to its weight per round, so
+ * a steady flow of high priority messages cannot starve lower priorities.
+ * EMERGENCY messages are always sent first, messages that have waited longer
+ * than the aging threshold are sent next.
+ * 
+ * @author Philipp Thiel
+ */
+final class WeightedScheduler implements MessageScheduler {
+
+	// Bytes per weight unit and round, small to keep rounds short on slow links
+	private static final int QUANTUM = 16;
+	private static final int EMERGENCY = PagerMessage.Priority.EMERGENCY.ordinal();
+	private final int[] quanta;
+	private final long[] deficits;
+	private final long agingMillis;
+	private int current = EMERGENCY;
+	private int selected = -1;
+
+	/**
+	 * Creates a new weighted scheduler.
+	 * 
+	 * @param weights     Weights indexed by priority ordinal, the weight of
+	 *                    EMERGENCY is ignored
+	 * @param agingMillis Waiting time after which a message is promoted in
+	 *                    milliseconds, 0 disables aging
+	 */
+	public WeightedScheduler(int[] weights, long agingMillis) {
+		this.quanta = new int[weights.length];
+		for (int i = 0; i < weights.length; ++i) {
+			quanta[i] = Math.max(1, weights[i]) * QUANTUM;
+		}
+
+		this.deficits = new long[weights.length];
+		this.agingMillis = agingMillis;
+	}
+
+	@Override
+	public int select(Queue<PagerMessage>[] queues, long nowMillis) {
+		selected = -1;
+		if (!queues[EMERGENCY].isEmpty()) {
+			return EMERGENCY;
+		}
+
+		final int aged = MessageScheduler.selectAged(queues, nowMillis, agingMillis);
+		if (aged >= 0) {
+			selected = aged;
+			return aged;
+		}
+
+		boolean pending = false;
+		for (int i = EMERGENCY + 1; i < queues.length && !pending; ++i) {
+			pending = !queues[i].isEmpty();
+		}
+
+		if (!pending) {
+			return -1;
+		}
+
+		// Terminates as every visit of a non-empty queue adds to its deficit
+		while (true) {
+			final PagerMessage head = queues[current].peek();
+			if (current != EMERGENCY && head != null
+					&& deficits[current] >= MessageEncoder.getEncodedLength(head)) {
+				selected = current;
+				return current;
+			} else if (head == null) {
+				// Idle queues do not save up credit
+				deficits[current] = 0;
+			}
+
+			current = current + 1 < queues.length ? current + 1 : EMERGENCY + 1;
+			deficits[current] += quanta[current];
+		}
+	}
+
+	@Override
+	public void onSelected(PagerMessage message) {
+		if (selected >= 0) {
+			// Promoted messages are charged as well, but do not push the queue into debt
+			deficits[selected] = Math.max(0, deficits[selected] - MessageEncoder.getEncodedLength(message));
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.PropertyReaderFactory;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.ServiceConfiguration;
+
+/**
+ * Heartbeat requests against a local stub of the transmitter service. The
+ * shared client of {@link TransmitterServices} is compared with a new client
+ * and connection per request, which is what the previous implementation did.
+ * 
+ * @author Philipp Thiel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// Without TCP_NODELAY the stub server delays responses on kept-alive connections
+@Fork(value = 1, jvmArgsAppend = { "-Djdk.httpclient.connectionPoolSize=16", "-Djdk.httpclient.keepalive.timeout=1200",
+		"-Dsun.net.httpserver.nodelay=true" })
+public class TransmitterServicesBenchmark {
+
+	private static final int CONCURRENT_REQUESTS = 16;
+	private static final byte[] RESPONSE = "{}".getBytes(StandardCharsets.US_ASCII);
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private TransmitterServices services;
+	private URI heartbeatUri;
+
+	@Setup
+	public void setup() throws IOException {
+		serverExecutor = Executors.newFixedThreadPool(4);
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+		server.createContext("/", this::handle);
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		final String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+		heartbeatUri = URI.create(baseUrl + "/transmitters/_heartbeat");
+
+		final Path configFile = Files.createTempFile("legacy-service", ".properties");
+		try (Writer writer = Files.newBufferedWriter(configFile)) {
+			writer.write("amqp.host=localhost\namqp.user=user\namqp.password=password\n");
+			writer.write("services.bootstrap=" + baseUrl + "/transmitters/_bootstrap\n");
+			writer.write("services.heartbeat=" + heartbeatUri + "\n");
+		}
+
+		final ServiceConfiguration configuration = new ServiceConfiguration();
+		configuration.loadConfiguration(PropertyReaderFactory.fromFile(configFile.toString()));
+		Files.delete(configFile);
+
+		services = new TransmitterServices(configuration);
+	}
+
+	@TearDown
+	public void tearDown() {
+		services.shutdown();
+		server.stop(0);
+		serverExecutor.shutdown();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			in.readAllBytes();
+		}
+
+		exchange.sendResponseHeaders(200, RESPONSE.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(RESPONSE);
+		}
+	}
+
+	/**
+	 * Shared pooled client, requests are sent one after another.
+	 */
+	@Benchmark
+	public boolean sharedClient() {
+		return services.postHeartbeat("db0abc", "secret", true).join();
+	}
+
+	/**
+	 * Shared pooled client with several requests in flight.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(CONCURRENT_REQUESTS)
+	public void sharedClientConcurrent() {
+		final CompletableFuture<?>[] futures = new CompletableFuture<?>[CONCURRENT_REQUESTS];
+		for (int i = 0; i < futures.length; ++i) {
+			futures[i] = services.postHeartbeat("db0abc", "secret", true);
+		}
+
+		CompletableFuture.allOf(futures).join();
+	}
+
+	/**
+	 * Previous behavior, a new client and connection for every request.
+	 */
+	@Benchmark
+	public int clientPerRequest() throws Exception {
+		final HttpClient client = HttpClient.newHttpClient();
+		final HttpRequest request = HttpRequest.newBuilder(heartbeatUri).version(HttpClient.Version.HTTP_1_1)
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers
+						.ofString("{\"callsign\":\"db0abc\",\"auth_key\":\"secret\",\"ntp_synced\":true}"))
+				.build();
+		return client.send(request, BodyHandlers.discarding()).statusCode();
+	}
+
+}
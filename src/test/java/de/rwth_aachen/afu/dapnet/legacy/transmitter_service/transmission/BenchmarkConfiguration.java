@@ -0,0 +1,86 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.util.Optional;
+import java.util.Properties;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.PropertyReader;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.ServiceConfiguration;
+
+/**
+ * Creates service configurations for benchmarks. Settings that are not given
+ * use their defaults, the required settings are filled with dummy values.
+ * 
+ * @author Philipp Thiel
+ */
+final class BenchmarkConfiguration {
+
+	private BenchmarkConfiguration() {
+	}
+
+	/**
+	 * Creates a service configuration.
+	 * 
+	 * @param settings Settings in the form {@code key=value}
+	 * @return Service configuration
+	 */
+	static ServiceConfiguration create(String... settings) {
+		final Properties properties = new Properties();
+		properties.setProperty("amqp.host", "localhost");
+		properties.setProperty("amqp.user", "user");
+		properties.setProperty("amqp.password", "password");
+		properties.setProperty("services.bootstrap", "http://localhost/transmitters/_bootstrap");
+		properties.setProperty("services.heartbeat", "http://localhost/transmitters/_heartbeat");
+		for (String setting : settings) {
+			final int index = setting.indexOf('=');
+			properties.setProperty(setting.substring(0, index), setting.substring(index + 1));
+		}
+
+		final ServiceConfiguration configuration = new ServiceConfiguration();
+		configuration.loadConfiguration(new PropertyReader() {
+			@Override
+			public Optional<Boolean> getBoolean(String key) {
+				return get(key).map(Boolean::parseBoolean);
+			}
+
+			@Override
+			public Optional<Double> getDouble(String key) {
+				return get(key).map(Double::parseDouble);
+			}
+
+			@Override
+			public Optional<Integer> getInteger(String key) {
+				return get(key).map(Integer::parseInt);
+			}
+
+			@Override
+			public Optional<String> getString(String key) {
+				return get(key);
+			}
+
+			private Optional<String> get(String key) {
+				return Optional.ofNullable(properties.getProperty(key)).filter(v -> !v.isEmpty());
+			}
+		});
+
+		return configuration;
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.ContentType;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.Priority;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.SendSpeed;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.SubAddress;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.TransmitterClient.Message;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.handler.codec.string.StringEncoder;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Compares the {@link MessageEncoder} with the previous encoder that formatted
+ * each frame into a string and copied it into a buffer with a
+ * {@link StringEncoder}. Run with {@code -prof gc} to see the allocation rate
+ * per frame.
+ * 
+ * @author Philipp Thiel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageEncoderBenchmark {
+
+	private EmbeddedChannel stringChannel;
+	private EmbeddedChannel bufferChannel;
+	private PagerMessage message;
+	private PagerMessage sharedMessage;
+	private int sequenceNumber;
+
+	/**
+	 * Previous encoder implementation, kept as the baseline.
+	 */
+	private static final class StringMessageEncoder extends MessageToMessageEncoder<Message> {
+		@Override
+		protected void encode(ChannelHandlerContext ctx, Message msg, List<Object> out) throws Exception {
+			final PagerMessage pm = msg.getMessage();
+			final int type = pm.getContentType() == ContentType.NUMERIC ? MessageEncoder.MT_NUMERIC
+					: MessageEncoder.MT_ALPHANUM;
+			out.add(String.format("#%02X %s:%X:%X:%s:%s\n", msg.getSequenceNumber(), type,
+					pm.getSendSpeed().getValue(), pm.getAddress(), pm.getSubAddress().getValue(), pm.getContent()));
+		}
+	}
+
+	@Setup
+	public void setup() {
+		stringChannel = new EmbeddedChannel(new StringEncoder(StandardCharsets.US_ASCII), new StringMessageEncoder());
+		bufferChannel = new EmbeddedChannel(new MessageEncoder());
+		message = createMessage();
+		sharedMessage = createMessage();
+		// Held for the whole run, so the shared body stays encoded
+		sharedMessage.addRecipient();
+	}
+
+	@TearDown
+	public void tearDown() {
+		sharedMessage.removeRecipient();
+		stringChannel.finishAndReleaseAll();
+		bufferChannel.finishAndReleaseAll();
+	}
+
+	/**
+	 * Previous path: format a string per frame and copy it into a buffer.
+	 */
+	@Benchmark
+	public int stringFormat() {
+		return write(stringChannel, message);
+	}
+
+	/**
+	 * Frame of a message written to a single transmitter, the body is encoded for
+	 * every frame.
+	 */
+	@Benchmark
+	public int byteBuf() {
+		message.addRecipient();
+		try {
+			return write(bufferChannel, message);
+		} finally {
+			// Releases the body, the next frame encodes it again
+			message.removeRecipient();
+		}
+	}
+
+	/**
+	 * Frame of a broadcast message, only the sequence number prefix is encoded and
+	 * the shared body is written as a slice.
+	 */
+	@Benchmark
+	public int byteBufShared() {
+		return write(bufferChannel, sharedMessage);
+	}
+
+	private static PagerMessage createMessage() {
+		return new PagerMessage(Priority.CALL, 0x1F2A3B, SubAddress.ADDR_D, ContentType.ALPHANUMERIC,
+				SendSpeed.BPS_1200, "Einsatz: Brand in Gebaeude, Musterstrasse 12, Stichwort B3");
+	}
+
+	private int write(EmbeddedChannel channel, PagerMessage pm) {
+		sequenceNumber = (sequenceNumber + 1) & 0xFF;
+		channel.writeOutbound(new Message(sequenceNumber, pm));
+
+		int length = 0;
+		Object out;
+		while ((out = channel.readOutbound()) != null) {
+			length += ((ByteBuf) out).readableBytes();
+			ReferenceCountUtil.release(out);
+		}
+
+		return length;
+	}
+
+}
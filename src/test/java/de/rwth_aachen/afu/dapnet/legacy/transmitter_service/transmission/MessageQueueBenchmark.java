@@ -0,0 +1,179 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.ContentType;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.Priority;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.SendSpeed;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.SubAddress;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * Compares the per-priority MPSC queues of {@link TransmitterClient} with the
+ * previous single {@link PriorityQueue} guarded by a monitor. Several producer
+ * threads queue messages while a single consumer, like the event loop, takes
+ * them in priority order. The queue is filled with a backlog before each
+ * iteration.
+ * 
+ * @author Philipp Thiel
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class MessageQueueBenchmark {
+
+	private static final Priority[] PRIORITIES = Priority.values();
+	private static final int MESSAGE_COUNT = 1024;
+
+	@Param({ "locked", "mpsc" })
+	private String queueType;
+
+	@Param({ "10000", "100000" })
+	private int backlog;
+
+	private PagerMessage[] messages;
+	private MessageQueue queue;
+
+	/**
+	 * Queue of pending messages, taken in priority order.
+	 */
+	private interface MessageQueue {
+		void offer(PagerMessage message);
+
+		PagerMessage poll();
+	}
+
+	/**
+	 * Previous implementation, a priority queue guarded by its monitor.
+	 */
+	private static final class LockedQueue implements MessageQueue {
+		private final PriorityQueue<PagerMessage> queue = new PriorityQueue<>();
+
+		@Override
+		public void offer(PagerMessage message) {
+			synchronized (queue) {
+				queue.offer(message);
+			}
+		}
+
+		@Override
+		public PagerMessage poll() {
+			synchronized (queue) {
+				return queue.poll();
+			}
+		}
+	}
+
+	/**
+	 * One MPSC queue per priority as used by {@link TransmitterClient}.
+	 */
+	private static final class MpscQueues implements MessageQueue {
+		private final Queue<PagerMessage>[] queues;
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		MpscQueues() {
+			queues = new Queue[PRIORITIES.length];
+			for (int i = 0; i < queues.length; ++i) {
+				queues[i] = PlatformDependent.newMpscQueue();
+			}
+		}
+
+		@Override
+		public void offer(PagerMessage message) {
+			queues[message.getPriority().ordinal()].offer(message);
+		}
+
+		@Override
+		public PagerMessage poll() {
+			for (Queue<PagerMessage> q : queues) {
+				final PagerMessage message = q.poll();
+				if (message != null) {
+					return message;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * Index of the next message a producer thread queues.
+	 */
+	@State(Scope.Thread)
+	public static class Producer {
+		int next;
+	}
+
+	@Setup
+	public void setup() {
+		// Mostly calls with some other priorities, timestamps in arrival order
+		messages = new PagerMessage[MESSAGE_COUNT];
+		for (int i = 0; i < messages.length; ++i) {
+			final Priority priority = i % 4 == 0 ? PRIORITIES[i % PRIORITIES.length] : Priority.CALL;
+			messages[i] = new PagerMessage(PagerMessage.currentTimeNanos() + i, priority, i, SubAddress.ADDR_D,
+					ContentType.ALPHANUMERIC, SendSpeed.BPS_1200, "Message " + i);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void fillBacklog() {
+		queue = "locked".equals(queueType) ? new LockedQueue() : new MpscQueues();
+		for (int i = 0; i < backlog; ++i) {
+			queue.offer(messages[i % MESSAGE_COUNT]);
+		}
+	}
+
+	@Benchmark
+	@Group("queue")
+	@GroupThreads(4)
+	public void offer(Producer producer) {
+		queue.offer(messages[producer.next]);
+		producer.next = (producer.next + 1) % MESSAGE_COUNT;
+	}
+
+	@Benchmark
+	@Group("queue")
+	@GroupThreads(1)
+	public PagerMessage poll() {
+		return queue.poll();
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.ContentType;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.Priority;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.SendSpeed;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.SubAddress;
+
+/**
+ * Compares the compact {@link PagerMessage} with the previous representation
+ * holding an {@link Instant}, enum references and a {@link String}. The
+ * construction benchmarks start from a new content string like a message
+ * received from the broker, run with {@code -prof gc} to see the allocation
+ * per message. Comparisons and sorting use a queue sized set of messages.
+ * 
+ * @author Philipp Thiel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PagerMessageBenchmark {
+
+	private static final int COUNT = 100_000;
+	private static final Priority[] PRIORITIES = Priority.values();
+
+	private final char[] content = "Einsatz: Brand in Gebaeude".toCharArray();
+	private PagerMessage[] messages;
+	private LegacyPagerMessage[] legacyMessages;
+	private int[] pairs;
+	private int pair;
+
+	/**
+	 * Previous pager message representation, kept as the baseline.
+	 */
+	static final class LegacyPagerMessage implements Comparable<LegacyPagerMessage> {
+		private final Instant timestamp;
+		private final Priority priority;
+		private final int address;
+		private final SubAddress subAddress;
+		private final ContentType type;
+		private final SendSpeed sendSpeed;
+		private final String content;
+
+		LegacyPagerMessage(Instant timestamp, Priority priority, int address, SubAddress subAddress,
+				ContentType type, SendSpeed sendSpeed, String content) {
+			this.timestamp = timestamp;
+			this.priority = priority;
+			this.address = address;
+			this.subAddress = subAddress;
+			this.type = type;
+			this.sendSpeed = sendSpeed;
+			this.content = content;
+		}
+
+		LegacyPagerMessage(Priority priority, int address, SubAddress subAddress, ContentType type,
+				SendSpeed sendSpeed, String content) {
+			this(Instant.now(), priority, address, subAddress, type, sendSpeed, content);
+		}
+
+		@Override
+		public int compareTo(LegacyPagerMessage o) {
+			if (priority.ordinal() < o.priority.ordinal()) {
+				return -1;
+			} else if (priority.ordinal() > o.priority.ordinal()) {
+				return 1;
+			}
+
+			// Same Priority, check Timestamp
+			if (timestamp.isBefore(o.timestamp)) {
+				return -1;
+			} else if (timestamp.isAfter(o.timestamp)) {
+				return 1;
+			} else {
+				return 0;
+			}
+		}
+	}
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42);
+		final long start = System.currentTimeMillis();
+		messages = new PagerMessage[COUNT];
+		legacyMessages = new LegacyPagerMessage[COUNT];
+		for (int i = 0; i < COUNT; ++i) {
+			final Priority priority = PRIORITIES[random.nextInt(PRIORITIES.length)];
+			final long timeMillis = start + random.nextInt(3_600_000);
+			final String text = new String(content, 0, 20 + random.nextInt(6));
+			messages[i] = new PagerMessage(TimeUnit.MILLISECONDS.toNanos(timeMillis), priority, i, SubAddress.ADDR_D,
+					ContentType.ALPHANUMERIC, SendSpeed.BPS_1200, text);
+			legacyMessages[i] = new LegacyPagerMessage(Instant.ofEpochMilli(timeMillis), priority, i,
+					SubAddress.ADDR_D, ContentType.ALPHANUMERIC, SendSpeed.BPS_1200, text);
+		}
+
+		pairs = new int[1 << 16];
+		for (int i = 0; i < pairs.length; ++i) {
+			pairs[i] = random.nextInt(COUNT);
+		}
+	}
+
+	@Benchmark
+	public PagerMessage create() {
+		return new PagerMessage(Priority.CALL, 0x1F2A3B, SubAddress.ADDR_D, ContentType.ALPHANUMERIC,
+				SendSpeed.BPS_1200, new String(content));
+	}
+
+	@Benchmark
+	public LegacyPagerMessage createLegacy() {
+		return new LegacyPagerMessage(Priority.CALL, 0x1F2A3B, SubAddress.ADDR_D, ContentType.ALPHANUMERIC,
+				SendSpeed.BPS_1200, new String(content));
+	}
+
+	/**
+	 * Comparison of two random messages.
+	 */
+	@Benchmark
+	public int compare() {
+		pair = (pair + 2) & (pairs.length - 1);
+		return messages[pairs[pair]].compareTo(messages[pairs[pair + 1]]);
+	}
+
+	/**
+	 * Comparison of two random messages.
+	 */
+	@Benchmark
+	public int compareLegacy() {
+		pair = (pair + 2) & (pairs.length - 1);
+		return legacyMessages[pairs[pair]].compareTo(legacyMessages[pairs[pair + 1]]);
+	}
+
+	/**
+	 * Sorts a copy of all messages.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public PagerMessage[] sort() {
+		final PagerMessage[] copy = messages.clone();
+		Arrays.sort(copy);
+		return copy;
+	}
+
+	/**
+	 * Sorts a copy of all messages.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public LegacyPagerMessage[] sortLegacy() {
+		final LegacyPagerMessage[] copy = legacyMessages.clone();
+		Arrays.sort(copy);
+		return copy;
+	}
+
+}
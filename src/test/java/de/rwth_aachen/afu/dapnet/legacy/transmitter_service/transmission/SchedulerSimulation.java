@@ -0,0 +1,143 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.SchedulingPolicy;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.ContentType;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.Priority;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.SendSpeed;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.SubAddress;
+
+/**
+ * Discrete-event simulation of a single transmitter link, comparing the
+ * queueing delay per priority of the scheduling policies. Messages arrive as
+ * Poisson processes and are sent at a fixed airtime per encoded byte. The
+ * schedulers are created from the default configuration of each policy. Run
+ * with {@code -Dbenchmark.main} set to this class.
+ * 
+ * @author Philipp Thiel
+ */
+public final class SchedulerSimulation {
+
+	/** Airtime of an encoded byte, about 1200 bps. */
+	private static final double MILLIS_PER_BYTE = 8;
+	private static final double DURATION_MILLIS = TimeUnit.HOURS.toMillis(4);
+	private static final double[] LOADS = { 0.8, 0.95, 1.05 };
+	private static final Priority[] PRIORITIES = { Priority.TIME, Priority.CALL, Priority.NEWS, Priority.ACTIVATION,
+			Priority.RUBRIC };
+	/** Share of the offered bytes per priority. */
+	private static final double[] SHARES = { 0.02, 0.78, 0.10, 0.04, 0.06 };
+	private static final int[] CONTENT_LENGTHS = { 10, 40, 80, 10, 80 };
+
+	private SchedulerSimulation() {
+	}
+
+	public static void main(String[] args) {
+		System.out.println("Mean / p95 queueing delay in seconds, messages left after "
+				+ TimeUnit.MILLISECONDS.toHours((long) DURATION_MILLIS) + " h");
+		for (double load : LOADS) {
+			for (SchedulingPolicy policy : SchedulingPolicy.values()) {
+				System.out.println(run(load, policy));
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static String run(double load, SchedulingPolicy policy) {
+		final MessageScheduler scheduler = MessageScheduler
+				.create(BenchmarkConfiguration.create("queue.scheduler=" + policy.name().toLowerCase(Locale.ROOT)));
+		final Queue<PagerMessage>[] queues = new Queue[Priority.values().length];
+		for (int i = 0; i < queues.length; ++i) {
+			queues[i] = new ArrayDeque<>();
+		}
+
+		final Random random = new Random(42);
+		final String[] contents = new String[PRIORITIES.length];
+		final double[] meanGaps = new double[PRIORITIES.length];
+		final double[] nextArrivals = new double[PRIORITIES.length];
+		for (int i = 0; i < PRIORITIES.length; ++i) {
+			contents[i] = "x".repeat(CONTENT_LENGTHS[i]);
+			final int length = MessageEncoder.getEncodedLength(createMessage(0, PRIORITIES[i], contents[i]));
+			meanGaps[i] = length / (load / MILLIS_PER_BYTE * SHARES[i]);
+			nextArrivals[i] = nextGap(random, meanGaps[i]);
+		}
+
+		final double[][] delays = new double[queues.length][];
+		final int[] counts = new int[queues.length];
+		for (int i = 0; i < delays.length; ++i) {
+			delays[i] = new double[1024];
+		}
+
+		double now = 0;
+		while (now < DURATION_MILLIS) {
+			for (int i = 0; i < PRIORITIES.length; ++i) {
+				while (nextArrivals[i] <= now) {
+					queues[PRIORITIES[i].ordinal()].add(createMessage(nextArrivals[i], PRIORITIES[i], contents[i]));
+					nextArrivals[i] += nextGap(random, meanGaps[i]);
+				}
+			}
+
+			final int index = scheduler.select(queues, (long) now);
+			if (index < 0) {
+				// Idle until the next arrival
+				now = Arrays.stream(nextArrivals).min().getAsDouble();
+				continue;
+			}
+
+			final PagerMessage msg = queues[index].poll();
+			scheduler.onSelected(msg);
+			if (counts[index] == delays[index].length) {
+				delays[index] = Arrays.copyOf(delays[index], counts[index] * 2);
+			}
+
+			delays[index][counts[index]++] = now - msg.getTimestampMillis();
+			now += MessageEncoder.getEncodedLength(msg) * MILLIS_PER_BYTE;
+		}
+
+		final StringBuilder sb = new StringBuilder(String.format("load %.2f %-8s", load, policy.name().toLowerCase(Locale.ROOT)));
+		for (Priority priority : PRIORITIES) {
+			final int index = priority.ordinal();
+			final double[] sorted = Arrays.copyOf(delays[index], counts[index]);
+			Arrays.sort(sorted);
+			final double mean = Arrays.stream(sorted).average().orElse(0);
+			final double p95 = sorted.length > 0 ? sorted[(int) (sorted.length * 0.95)] : 0;
+			sb.append(String.format(" | %s %.1f/%.1f left %d", priority.name().toLowerCase(Locale.ROOT), mean / 1000, p95 / 1000,
+					queues[index].size()));
+		}
+
+		return sb.toString();
+	}
+
+	private static double nextGap(Random random, double meanGap) {
+		return -Math.log(random.nextDouble()) * meanGap;
+	}
+
+	private static PagerMessage createMessage(double timeMillis, Priority priority, String content) {
+		return new PagerMessage(TimeUnit.MILLISECONDS.toNanos((long) timeMillis), priority, 1, SubAddress.ADDR_A,
+				ContentType.ALPHANUMERIC, SendSpeed.BPS_1200, content);
+	}
+
+}
@@ -0,0 +1,227 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.ServiceConfiguration;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+
+/**
+ * Duration of the time sync of a handshake with a fixed number of loops and
+ * with adaptive sync. The simulated transmitter answers each sync request and
+ * the time adjustment after a round trip time with uniformly distributed
+ * jitter. The {@code loops} counter is the total number of sync loops of an
+ * iteration, divided by {@code handshakes} it gives the loops per handshake.
+ * 
+ * @author Philipp Thiel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyncTimeBenchmark {
+
+	/**
+	 * Round trip time and jitter in milliseconds.
+	 */
+	@Param({ "2/0", "50/5", "200/20", "200/150" })
+	private String link;
+
+	@Param({ "false", "true" })
+	private boolean adaptive;
+
+	private ServiceConfiguration configuration;
+	private EventLoopGroup group;
+	private Channel serverChannel;
+	private Channel transmitterChannel;
+	private ChannelHandlerContext serverContext;
+	private final CompletableFuture<Void> connected = new CompletableFuture<>();
+	private SyncTimeHandler syncHandler;
+	private CompletableFuture<Integer> syncDone;
+	private long roundTripMillis;
+	private long jitterMillis;
+
+	/**
+	 * Sync loops per iteration.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Loops {
+		public long loops;
+		public long handshakes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			loops = 0;
+			handshakes = 0;
+		}
+	}
+
+	/**
+	 * Server side of the connection, hands the responses to the sync handler.
+	 */
+	private final class SyncHandler extends SimpleChannelInboundHandler<String> {
+		@Override
+		public void channelActive(ChannelHandlerContext ctx) throws Exception {
+			serverContext = ctx;
+			connected.complete(null);
+		}
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, String message) throws Exception {
+			syncHandler.handleMessage(ctx, message);
+			if (syncHandler.isDone()) {
+				syncDone.complete(syncHandler.getLoopCount());
+			}
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+			syncDone.completeExceptionally(cause);
+		}
+	}
+
+	/**
+	 * Simulated transmitter, answers sync requests with its time and acks the
+	 * time adjustment.
+	 */
+	private final class TransmitterHandler extends SimpleChannelInboundHandler<String> {
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, String message) throws Exception {
+			final String response;
+			if (message.startsWith(MessageEncoder.MT_SYNCREQUEST + ":")) {
+				final long time = (System.currentTimeMillis() / 100) & 0xffff;
+				response = String.format("%s:%04x\n+\n", message, time);
+			} else {
+				response = "+\n";
+			}
+
+			final long delay = roundTripMillis + ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+			ctx.executor().schedule(() -> ctx.writeAndFlush(response), delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		final String[] values = link.split("/");
+		roundTripMillis = Long.parseLong(values[0]);
+		jitterMillis = Long.parseLong(values[1]);
+		configuration = BenchmarkConfiguration.create("sync.adaptive=" + adaptive);
+		group = new DefaultEventLoopGroup(2);
+
+		serverChannel = new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+				.childHandler(new ChannelInitializer<Channel>() {
+					@Override
+					protected void initChannel(Channel ch) throws Exception {
+						ch.pipeline().addLast(new LineDecoder(256), new StringEncoder(StandardCharsets.US_ASCII),
+								new SyncHandler());
+					}
+				}).bind(LocalAddress.ANY).sync().channel();
+
+		transmitterChannel = new Bootstrap().group(group).channel(LocalChannel.class)
+				.handler(new ChannelInitializer<Channel>() {
+					@Override
+					protected void initChannel(Channel ch) throws Exception {
+						ch.pipeline().addLast(new LineBasedFrameDecoder(256),
+								new StringDecoder(StandardCharsets.US_ASCII),
+								new StringEncoder(StandardCharsets.US_ASCII), new TransmitterHandler());
+					}
+				}).connect(serverChannel.localAddress()).sync().channel();
+
+		connected.get(5, TimeUnit.SECONDS);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		transmitterChannel.close().sync();
+		serverChannel.close().sync();
+		group.shutdownGracefully().sync();
+	}
+
+	/**
+	 * Time sync of a single handshake, from the first sync request to the ack of
+	 * the time adjustment.
+	 */
+	@Benchmark
+	public int handshake(Loops counters) throws Exception {
+		final CompletableFuture<Integer> done = new CompletableFuture<>();
+		serverContext.executor().execute(() -> {
+			syncHandler = createSyncHandler();
+			syncDone = done;
+			try {
+				// Sends the first sync request
+				syncHandler.handleMessage(serverContext, null);
+			} catch (Exception ex) {
+				done.completeExceptionally(ex);
+			}
+		});
+
+		final int loops = done.get(30, TimeUnit.SECONDS);
+		counters.loops += loops;
+		++counters.handshakes;
+		return loops;
+	}
+
+	/**
+	 * Creates the sync handler like the server handler does.
+	 */
+	private SyncTimeHandler createSyncHandler() {
+		if (configuration.isAdaptiveSync()) {
+			return new SyncTimeHandler(configuration.getMinSyncLoops(), configuration.getMaxSyncLoops(),
+					configuration.getSyncTolerance(), null);
+		} else {
+			return new SyncTimeHandler(configuration.getNumberOfSyncLoops(), null);
+		}
+	}
+
+}
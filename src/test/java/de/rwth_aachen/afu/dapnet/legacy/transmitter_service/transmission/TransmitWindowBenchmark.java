@@ -0,0 +1,176 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.config.ServiceConfiguration;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.ContentType;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.Priority;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.SendSpeed;
+import de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission.PagerMessage.SubAddress;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+
+/**
+ * Message throughput of a {@link TransmitterClient} against a simulated
+ * transmitter that acks each message after a round trip time. A window of 1 is
+ * stop-and-wait, larger windows keep several messages in flight. The in-VM
+ * transport is used, so the round trip time is the only delay.
+ * 
+ * @author Philipp Thiel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class TransmitWindowBenchmark {
+
+	private static final int BATCH = 64;
+
+	@Param({ "5", "20", "50" })
+	private int roundTripMillis;
+
+	@Param({ "1", "8", "32" })
+	private int windowSize;
+
+	private final Semaphore acks = new Semaphore(0);
+	private final CompletableFuture<TransmitterClient> clientFuture = new CompletableFuture<>();
+	private EventLoopGroup group;
+	private Channel serverChannel;
+	private Channel transmitterChannel;
+	private TransmitterClient client;
+
+	/**
+	 * Server side of the connection, hands the acks to the client.
+	 */
+	private final class AckHandler extends SimpleChannelInboundHandler<MessageAck> {
+		private final TransmitterClient client;
+
+		AckHandler(TransmitterClient client) {
+			this.client = client;
+		}
+
+		@Override
+		public void channelActive(ChannelHandlerContext ctx) throws Exception {
+			client.start();
+			clientFuture.complete(client);
+		}
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, MessageAck ack) throws Exception {
+			if (client.ackMessage(ack.getSequenceNumber(), ack.getType())) {
+				acks.release();
+			}
+		}
+	}
+
+	/**
+	 * Simulated transmitter, acks every message frame after the round trip time.
+	 */
+	private final class TransmitterHandler extends SimpleChannelInboundHandler<ByteBuf> {
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
+			final int sequenceNumber = Integer.parseInt(frame.toString(1, 2, StandardCharsets.US_ASCII), 16);
+			final String ack = String.format("#%02X +\n", (sequenceNumber + 1) % 256);
+			ctx.executor().schedule(
+					() -> ctx.writeAndFlush(Unpooled.copiedBuffer(ack, StandardCharsets.US_ASCII)),
+					roundTripMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		final ServiceConfiguration configuration = BenchmarkConfiguration.create();
+		group = new DefaultEventLoopGroup(2);
+
+		serverChannel = new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+				.childHandler(new ChannelInitializer<Channel>() {
+					@Override
+					protected void initChannel(Channel ch) throws Exception {
+						final TransmitterClient client = new TransmitterClient(ch, configuration);
+						client.setWindowSize(windowSize);
+						ch.pipeline().addLast(new LineDecoder(256), new MessageEncoder(), new AckHandler(client));
+					}
+				}).bind(LocalAddress.ANY).sync().channel();
+
+		transmitterChannel = new Bootstrap().group(group).channel(LocalChannel.class)
+				.handler(new ChannelInitializer<Channel>() {
+					@Override
+					protected void initChannel(Channel ch) throws Exception {
+						ch.pipeline().addLast(new LineBasedFrameDecoder(256), new TransmitterHandler());
+					}
+				}).connect(serverChannel.localAddress()).sync().channel();
+
+		client = clientFuture.get(5, TimeUnit.SECONDS);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		transmitterChannel.close().sync();
+		serverChannel.close().sync();
+		group.shutdownGracefully().sync();
+	}
+
+	/**
+	 * Sends a batch of messages and waits until all of them have been acked.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void transmit() throws InterruptedException {
+		for (int i = 0; i < BATCH; ++i) {
+			client.sendMessage(new PagerMessage(Priority.CALL, 0x1F2A3B + i, SubAddress.ADDR_D,
+					ContentType.ALPHANUMERIC, SendSpeed.BPS_1200, "Einsatz: Brand in Gebaeude"));
+		}
+
+		acks.acquire(BATCH);
+	}
+
+}
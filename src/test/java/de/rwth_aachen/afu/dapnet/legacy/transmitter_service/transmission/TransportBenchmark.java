@@ -0,0 +1,183 @@
+/*
+ * DAPNET Legacy Transmitter Service
+ * Copyright (C) 2021 Philipp Thiel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.rwth_aachen.afu.dapnet.legacy.transmitter_service.transmission;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+
+/**
+ * Loopback benchmark of the server transports. A transmitter is simulated by a
+ * blocking socket that sends message frames, the server answers each frame
+ * with an ack like a transmitter would. The latency benchmark waits for each
+ * ack (stop-and-wait), the throughput benchmark keeps a window of frames in
+ * flight.
+ * 
+ * @author Philipp Thiel
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportBenchmark {
+
+	private static final int WINDOW = 64;
+	private static final byte[] FRAME = "#1F 6:1:1F2A3B:3:Einsatz: Brand in Gebaeude, Musterstrasse 12\n"
+			.getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ACK = "#20 +\n".getBytes(StandardCharsets.US_ASCII);
+
+	@Param({ "nio", "epoll" })
+	private String transport;
+
+	private EventLoopGroup bossGroup;
+	private EventLoopGroup workerGroup;
+	private Channel serverChannel;
+	private Socket socket;
+	private OutputStream out;
+	private InputStream in;
+	private byte[] window;
+
+	/**
+	 * Answers every frame with an ack, acks are flushed once per read.
+	 */
+	private static final class AckHandler extends SimpleChannelInboundHandler<ByteBuf> {
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) throws Exception {
+			ctx.write(ctx.alloc().ioBuffer(ACK.length).writeBytes(ACK));
+		}
+
+		@Override
+		public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+			ctx.flush();
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		final ServerBootstrap b = new ServerBootstrap();
+		if ("epoll".equals(transport)) {
+			bossGroup = new EpollEventLoopGroup(1);
+			workerGroup = new EpollEventLoopGroup(1);
+			b.channel(EpollServerSocketChannel.class);
+		} else {
+			bossGroup = new NioEventLoopGroup(1);
+			workerGroup = new NioEventLoopGroup(1);
+			b.channel(NioServerSocketChannel.class);
+		}
+
+		b.group(bossGroup, workerGroup).childOption(ChannelOption.TCP_NODELAY, true)
+				.childHandler(new ChannelInitializer<Channel>() {
+					@Override
+					protected void initChannel(Channel ch) throws Exception {
+						ch.pipeline().addLast(new LineBasedFrameDecoder(2048), new AckHandler());
+					}
+				});
+		serverChannel = b.bind("127.0.0.1", 0).sync().channel();
+
+		socket = new Socket();
+		socket.setTcpNoDelay(true);
+		socket.connect((InetSocketAddress) serverChannel.localAddress());
+		out = socket.getOutputStream();
+		in = new BufferedInputStream(socket.getInputStream());
+
+		window = new byte[FRAME.length * WINDOW];
+		for (int i = 0; i < WINDOW; ++i) {
+			System.arraycopy(FRAME, 0, window, i * FRAME.length, FRAME.length);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		socket.close();
+		serverChannel.close().sync();
+		bossGroup.shutdownGracefully().sync();
+		workerGroup.shutdownGracefully().sync();
+	}
+
+	/**
+	 * Round trip of a single frame and its ack.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int latency() throws IOException {
+		out.write(FRAME);
+		return readAcks(1);
+	}
+
+	/**
+	 * Frames per second with a window of frames in flight.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(WINDOW)
+	public int throughput() throws IOException {
+		out.write(window);
+		return readAcks(WINDOW);
+	}
+
+	private int readAcks(int count) throws IOException {
+		int lines = 0;
+		while (lines < count) {
+			final int c = in.read();
+			if (c < 0) {
+				throw new IOException("Connection closed.");
+			} else if (c == '\n') {
+				++lines;
+			}
+		}
+
+		return lines;
+	}
+
+}